@@ -0,0 +1,277 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans;
+
+import static edworld.pdfreader4humans.BinaryComponentWriter.BORDER_BOTTOM;
+import static edworld.pdfreader4humans.BinaryComponentWriter.BORDER_LEFT;
+import static edworld.pdfreader4humans.BinaryComponentWriter.BORDER_RIGHT;
+import static edworld.pdfreader4humans.BinaryComponentWriter.BORDER_TOP;
+import static edworld.pdfreader4humans.BinaryComponentWriter.BOX;
+import static edworld.pdfreader4humans.BinaryComponentWriter.END;
+import static edworld.pdfreader4humans.BinaryComponentWriter.GRID;
+import static edworld.pdfreader4humans.BinaryComponentWriter.GROUP;
+import static edworld.pdfreader4humans.BinaryComponentWriter.MAGIC;
+import static edworld.pdfreader4humans.BinaryComponentWriter.MARGIN;
+import static edworld.pdfreader4humans.BinaryComponentWriter.PAGE;
+import static edworld.pdfreader4humans.BinaryComponentWriter.TEXT;
+import static edworld.pdfreader4humans.BinaryComponentWriter.VERSION;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads the pages written by {@link BinaryComponentWriter}, either as
+ * component trees with {@link #readPage()} or one event at a time with
+ * {@link #next()}, which walks the components without creating them.
+ */
+public class BinaryComponentReader implements Closeable {
+	public static final int START_PAGE = 1;
+	public static final int END_PAGE = 2;
+	public static final int START_COMPONENT = 3;
+	public static final int END_COMPONENT = 4;
+	public static final int END_DOCUMENT = 5;
+	private DataInputStream input;
+	private List<String> strings = new ArrayList<String>();
+	private int[] remainingChildren = new int[16];
+	private int depth = -1;
+	private boolean ended;
+	private int kind;
+	private int borders;
+	private String type;
+	private float fromX, fromY, toX, toY;
+	private String text;
+	private String fontName;
+	private float fontSize;
+	private float lineWidth;
+
+	public BinaryComponentReader(InputStream input) throws IOException {
+		this.input = new DataInputStream(new BufferedInputStream(input));
+		byte[] magic = new byte[MAGIC.length];
+		this.input.readFully(magic);
+		if (!Arrays.equals(magic, MAGIC) || this.input.readByte() != VERSION)
+			throw new IOException("Unsupported component format");
+	}
+
+	/**
+	 * Reads the components of the next page.
+	 *
+	 * @return the first level components of the page, or null if there are
+	 *         no more pages
+	 */
+	public List<Component> readPage() throws IOException {
+		int event = next();
+		if (event == END_DOCUMENT)
+			return null;
+		if (event != START_PAGE)
+			throw new IllegalStateException("The reader is in the middle of a page.");
+		List<Component> components = new ArrayList<Component>();
+		List<Component> parents = new ArrayList<Component>();
+		for (event = next(); event != END_PAGE; event = next())
+			if (event == START_COMPONENT) {
+				Component component = getComponent();
+				if (parents.isEmpty())
+					components.add(component);
+				else
+					parents.get(parents.size() - 1).addChild(component);
+				parents.add(component);
+			} else
+				parents.remove(parents.size() - 1);
+		return components;
+	}
+
+	/**
+	 * Moves to the next event: the start or end of a page, the start or end
+	 * of a component, or the end of the document. At the start of a component
+	 * its fields are available through the getters.
+	 */
+	public int next() throws IOException {
+		if (ended)
+			return END_DOCUMENT;
+		if (depth < 0) {
+			byte marker = input.readByte();
+			if (marker == END) {
+				ended = true;
+				return END_DOCUMENT;
+			}
+			if (marker != PAGE)
+				throw new IOException("Corrupted component data");
+			push(readSize());
+			return START_PAGE;
+		}
+		if (remainingChildren[depth] == 0) {
+			depth--;
+			return depth < 0 ? END_PAGE : END_COMPONENT;
+		}
+		remainingChildren[depth]--;
+		readComponent();
+		push(readSize());
+		return START_COMPONENT;
+	}
+
+	/**
+	 * Creates the current component, without its children.
+	 */
+	public Component getComponent() {
+		switch (kind) {
+		case TEXT:
+			return new TextComponent(text, fromX, fromY, toX, toY, fontName, fontSize);
+		case GRID:
+			return new GridComponent(type, fromX, fromY, toX, toY, lineWidth);
+		case BOX:
+			return new BoxComponent(fromX, fromY, toX, toY, lineWidth, isBorderLeft(), isBorderTop(), isBorderRight(),
+					isBorderBottom());
+		case MARGIN:
+			return new MarginComponent(fromX, fromY, toX, toY);
+		default:
+			return new GroupComponent(fromX, fromY, toX, toY);
+		}
+	}
+
+	int getTag() {
+		return kind | borders;
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	public float getFromX() {
+		return fromX;
+	}
+
+	public float getFromY() {
+		return fromY;
+	}
+
+	public float getToX() {
+		return toX;
+	}
+
+	public float getToY() {
+		return toY;
+	}
+
+	public String getText() {
+		return text;
+	}
+
+	public String getFontName() {
+		return fontName;
+	}
+
+	public float getFontSize() {
+		return fontSize;
+	}
+
+	public float getLineWidth() {
+		return lineWidth;
+	}
+
+	public boolean isBorderLeft() {
+		return (borders & BORDER_LEFT) != 0;
+	}
+
+	public boolean isBorderTop() {
+		return (borders & BORDER_TOP) != 0;
+	}
+
+	public boolean isBorderRight() {
+		return (borders & BORDER_RIGHT) != 0;
+	}
+
+	public boolean isBorderBottom() {
+		return (borders & BORDER_BOTTOM) != 0;
+	}
+
+	@Override
+	public void close() throws IOException {
+		input.close();
+	}
+
+	private void readComponent() throws IOException {
+		int tag = input.readUnsignedByte();
+		kind = tag & 0x0F;
+		borders = tag & 0xF0;
+		text = null;
+		fontName = null;
+		fontSize = 0;
+		lineWidth = 0;
+		switch (kind) {
+		case TEXT:
+			type = "text";
+			readCoordinates();
+			text = readText();
+			fontName = readString();
+			fontSize = input.readFloat();
+			break;
+		case GRID:
+			type = readString();
+			readCoordinates();
+			lineWidth = input.readFloat();
+			break;
+		case BOX:
+			type = "box";
+			readCoordinates();
+			lineWidth = input.readFloat();
+			break;
+		case MARGIN:
+			type = "margin";
+			readCoordinates();
+			break;
+		case GROUP:
+			type = "group";
+			readCoordinates();
+			break;
+		default:
+			throw new IOException("Unknown component kind " + kind);
+		}
+	}
+
+	private void readCoordinates() throws IOException {
+		fromX = input.readFloat();
+		fromY = input.readFloat();
+		toX = input.readFloat();
+		toY = input.readFloat();
+	}
+
+	private String readString() throws IOException {
+		int index = readSize();
+		if (index < strings.size())
+			return strings.get(index);
+		if (index > strings.size())
+			throw new IOException("Corrupted component data");
+		String string = readText();
+		strings.add(string);
+		return string;
+	}
+
+	private String readText() throws IOException {
+		byte[] bytes = new byte[readSize()];
+		input.readFully(bytes);
+		return new String(bytes, PDFReader.UTF_8);
+	}
+
+	private int readSize() throws IOException {
+		int size = 0;
+		for (int shift = 0;; shift += 7) {
+			int b = input.readUnsignedByte();
+			size |= (b & 0x7F) << shift;
+			if (b < 0x80 && size >= 0)
+				return size;
+			if (shift > 21)
+				throw new IOException("Corrupted component data");
+		}
+	}
+
+	private void push(int children) {
+		depth++;
+		if (depth == remainingChildren.length)
+			remainingChildren = Arrays.copyOf(remainingChildren, 2 * depth);
+		remainingChildren[depth] = children;
+	}
+}
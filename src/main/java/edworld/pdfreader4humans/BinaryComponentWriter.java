@@ -0,0 +1,144 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes pages of components in a compact binary format read back by
+ * {@link BinaryComponentReader}. Font names and grid types are written once
+ * and then referenced by their position in a table.
+ */
+public class BinaryComponentWriter implements Closeable {
+	static final byte[] MAGIC = { 'P', '4', 'H' };
+	static final byte VERSION = 1;
+	static final byte PAGE = 1;
+	static final byte END = 0;
+	static final byte TEXT = 1;
+	static final byte GRID = 2;
+	static final byte BOX = 3;
+	static final byte MARGIN = 4;
+	static final byte GROUP = 5;
+	static final int BORDER_LEFT = 0x10;
+	static final int BORDER_TOP = 0x20;
+	static final int BORDER_RIGHT = 0x40;
+	static final int BORDER_BOTTOM = 0x80;
+	private DataOutputStream output;
+	private Map<String, Integer> strings = new HashMap<String, Integer>();
+
+	public BinaryComponentWriter(OutputStream output) throws IOException {
+		this.output = new DataOutputStream(new BufferedOutputStream(output));
+		this.output.write(MAGIC);
+		this.output.writeByte(VERSION);
+	}
+
+	public void writePage(List<? extends Component> components) throws IOException {
+		output.writeByte(PAGE);
+		writeComponents(components);
+	}
+
+	/**
+	 * Marks the end of the pages and flushes the output, without closing it.
+	 */
+	public void finish() throws IOException {
+		output.writeByte(END);
+		output.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		finish();
+		output.close();
+	}
+
+	private void writeComponents(List<? extends Component> components) throws IOException {
+		writeSize(components.size());
+		for (Component component : components)
+			writeComponent(component);
+	}
+
+	private void writeComponent(Component component) throws IOException {
+		int tag = tag(component);
+		output.writeByte(tag);
+		switch (tag & 0x0F) {
+		case TEXT:
+			TextComponent text = (TextComponent) component;
+			writeCoordinates(component);
+			writeText(text.getText());
+			writeString(text.getFontName());
+			output.writeFloat(text.getFontSize());
+			break;
+		case GRID:
+			writeString(component.getType());
+			writeCoordinates(component);
+			output.writeFloat(((GridComponent) component).getLineWidth());
+			break;
+		case BOX:
+			writeCoordinates(component);
+			output.writeFloat(((BoxComponent) component).getLineWidth());
+			break;
+		default:
+			writeCoordinates(component);
+		}
+		writeComponents(component.getChildren());
+	}
+
+	/**
+	 * Kind of the component in the low four bits, with the borders of boxes in
+	 * the high bits.
+	 */
+	static int tag(Component component) {
+		if (component instanceof TextComponent)
+			return TEXT;
+		if (component instanceof GridComponent)
+			return GRID;
+		if (component instanceof BoxComponent) {
+			BoxComponent box = (BoxComponent) component;
+			return BOX | (box.isBorderLeft() ? BORDER_LEFT : 0) | (box.isBorderTop() ? BORDER_TOP : 0)
+					| (box.isBorderRight() ? BORDER_RIGHT : 0) | (box.isBorderBottom() ? BORDER_BOTTOM : 0);
+		}
+		if (component instanceof MarginComponent)
+			return MARGIN;
+		if (component instanceof GroupComponent)
+			return GROUP;
+		throw new IllegalArgumentException("Unable to write " + component.getClass().getName());
+	}
+
+	private void writeCoordinates(Component component) throws IOException {
+		output.writeFloat(component.getFromX());
+		output.writeFloat(component.getFromY());
+		output.writeFloat(component.getToX());
+		output.writeFloat(component.getToY());
+	}
+
+	private void writeString(String string) throws IOException {
+		Integer index = strings.get(string);
+		if (index != null)
+			writeSize(index);
+		else {
+			writeSize(strings.size());
+			strings.put(string, strings.size());
+			writeText(string);
+		}
+	}
+
+	private void writeText(String text) throws IOException {
+		byte[] bytes = text.getBytes(PDFReader.UTF_8);
+		writeSize(bytes.length);
+		output.write(bytes);
+	}
+
+	private void writeSize(int size) throws IOException {
+		while (size >= 0x80) {
+			output.writeByte(size & 0x7F | 0x80);
+			size >>>= 7;
+		}
+		output.writeByte(size);
+	}
+}
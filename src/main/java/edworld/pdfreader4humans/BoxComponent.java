@@ -1,6 +1,9 @@
 // This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
 package edworld.pdfreader4humans;
 
+import java.io.IOException;
+import java.io.Writer;
+
 public class BoxComponent extends Component {
 	private boolean borderLeft, borderTop, borderRight, borderBottom;
 	private float lineWidth;
@@ -19,12 +22,43 @@ public class BoxComponent extends Component {
 		return lineWidth;
 	}
 
+	public boolean isBorderLeft() {
+		return borderLeft;
+	}
+
+	public boolean isBorderTop() {
+		return borderTop;
+	}
+
+	public boolean isBorderRight() {
+		return borderRight;
+	}
+
+	public boolean isBorderBottom() {
+		return borderBottom;
+	}
+
+	@Override
+	public boolean writeField(String fieldName, Writer writer) throws IOException {
+		switch (fieldName) {
+		case "lineWidth":
+			writer.write(String.valueOf(getLineWidth()));
+			return true;
+		case "borders":
+			writer.write(borderToString());
+			return true;
+		default:
+			return super.writeField(fieldName, writer);
+		}
+	}
+
+	/**
+	 * @deprecated the fields are written by {@link #writeField}
+	 */
+	@Deprecated
 	@Override
 	public String output(String template) {
-		String output = super.output(template);
-		output = fillTemplate(output, "lineWidth", getLineWidth());
-		output = fillTemplate(output, "borders", borderToString());
-		return output;
+		return super.output(template);
 	}
 
 	@Override
@@ -0,0 +1,246 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+import edworld.pdfreader4humans.util.PDFUtil;
+
+public class CachedPDFReader extends PDFReader {
+	private static final int FORMAT_VERSION = 3;
+	private File cacheDirectory;
+	private String cacheKey;
+
+	/**
+	 * Class responsible for reading PDF contents in the same order a human
+	 * would read them, keeping the analysis of each page in a cache directory
+	 * so that reading the same PDF again with the same settings does not
+	 * parse it.
+	 *
+	 * @param url
+	 *            the PDF's location
+	 * @param componentLocator
+	 *            an instance of a PDFComponentLocator subclass such as
+	 *            MainPDFComponentLocator
+	 * @param boxDetector
+	 *            an instance of a BoxDetector subclass such as MainBoxDetector
+	 * @param marginDetector
+	 *            an instance of a MarginDetector subclass such as
+	 *            MainMarginDetector
+	 * @param tolerance
+	 *            tolerance used to verify containment of components
+	 * @param cacheDirectory
+	 *            directory where the analysed pages are stored, created if
+	 *            needed
+	 * @throws IOException
+	 */
+	public CachedPDFReader(URL url, PDFComponentLocator componentLocator, BoxDetector boxDetector,
+			MarginDetector marginDetector, float tolerance, File cacheDirectory) throws IOException {
+		super(url, tolerance);
+		this.cacheDirectory = cacheDirectory;
+		File file = FileUtils.toFile(url);
+		if (file != null) {
+			readPages(file, componentLocator, boxDetector, marginDetector);
+			return;
+		}
+		// other URLs are fetched once, and the same copy is hashed and analysed
+		File spool = File.createTempFile("pdfreader4humans", ".pdf");
+		try {
+			FileUtils.copyURLToFile(url, spool);
+			readPages(spool, componentLocator, boxDetector, marginDetector);
+		} finally {
+			spool.delete();
+		}
+	}
+
+	private void readPages(File file, PDFComponentLocator componentLocator, BoxDetector boxDetector,
+			MarginDetector marginDetector) throws IOException {
+		cacheKey = digest(file) + "-" + digest(settings(componentLocator, boxDetector, marginDetector));
+		if (!readCachedPages()) {
+			firstLevel.clear();
+			pageBoxes.clear();
+			readAndCachePages(file, componentLocator, boxDetector, marginDetector);
+		}
+	}
+
+	private String settings(PDFComponentLocator componentLocator, BoxDetector boxDetector,
+			MarginDetector marginDetector) {
+		return FORMAT_VERSION + "," + componentLocator.getClass().getName() + "," + boxDetector.getClass().getName()
+				+ "," + marginDetector.getClass().getName() + "," + tolerance;
+	}
+
+	/**
+	 * Reads all pages from the cache. Cache files that cannot be read are
+	 * deleted, so that their pages are analysed and cached again.
+	 *
+	 * @return false if some page is not cached
+	 */
+	private boolean readCachedPages() {
+		File pagesFile = cacheFile("pages");
+		if (!pagesFile.isFile())
+			return false;
+		int numberOfPages;
+		try {
+			DataInputStream input = new DataInputStream(new FileInputStream(pagesFile));
+			try {
+				numberOfPages = input.readInt();
+				if (numberOfPages < 0)
+					throw new IOException("Corrupted cache file " + pagesFile);
+				for (int index = 0; index < numberOfPages; index++)
+					pageBoxes.add(new PageBox(input.readFloat(), input.readFloat(), input.readFloat(),
+							input.readFloat(), input.readInt()));
+			} finally {
+				input.close();
+			}
+		} catch (IOException e) {
+			pagesFile.delete();
+			return false;
+		}
+		for (int index = 0; index < numberOfPages; index++) {
+			List<Component> pageFirstLevelComponents = readCachedPage(index);
+			if (pageFirstLevelComponents == null)
+				return false;
+			firstLevel.add(pageFirstLevelComponents);
+		}
+		return true;
+	}
+
+	/**
+	 * @return the components of a cached page, or null if the page is not
+	 *         cached or its file cannot be read, in which case it is deleted
+	 */
+	private List<Component> readCachedPage(int index) {
+		File pageFile = cacheFile(String.valueOf(index));
+		if (!pageFile.isFile())
+			return null;
+		try {
+			return readPage(pageFile);
+		} catch (IOException e) {
+			pageFile.delete();
+			return null;
+		}
+	}
+
+	private void readAndCachePages(File file, PDFComponentLocator componentLocator, BoxDetector boxDetector,
+			MarginDetector marginDetector) throws IOException {
+		if (!cacheDirectory.isDirectory() && !cacheDirectory.mkdirs())
+			throw new IOException("Unable to create the cache directory " + cacheDirectory);
+		PDDocument doc = PDFUtil.load(file);
+		try {
+			for (int index = 0; index < doc.getNumberOfPages(); index++) {
+				pageBoxes.add(new PageBox(doc.getPage(index)));
+				List<Component> pageFirstLevelComponents = readCachedPage(index);
+				if (pageFirstLevelComponents == null) {
+					pageFirstLevelComponents = readPage(new PDFPage(index, doc.getPage(index), doc), componentLocator,
+							boxDetector, marginDetector);
+					writePage(pageFirstLevelComponents, cacheFile(String.valueOf(index)));
+				}
+				firstLevel.add(pageFirstLevelComponents);
+			}
+		} finally {
+			doc.close();
+		}
+		File temporaryFile = File.createTempFile("pages", ".tmp", cacheDirectory);
+		DataOutputStream output = new DataOutputStream(new FileOutputStream(temporaryFile));
+		try {
+			output.writeInt(firstLevel.size());
+			for (PageBox pageBox : pageBoxes) {
+				output.writeFloat(pageBox.getLowerLeftX());
+				output.writeFloat(pageBox.getLowerLeftY());
+				output.writeFloat(pageBox.getWidth());
+				output.writeFloat(pageBox.getHeight());
+				output.writeInt(pageBox.getRotation());
+			}
+		} finally {
+			output.close();
+		}
+		moveTo(temporaryFile, cacheFile("pages"));
+	}
+
+	private File cacheFile(String suffix) {
+		return new File(cacheDirectory, cacheKey + "-" + suffix);
+	}
+
+	private List<Component> readPage(File pageFile) throws IOException {
+		InputStream input = new FileInputStream(pageFile);
+		try {
+			List<Component> components = new BinaryComponentReader(input).readPage();
+			if (components == null)
+				throw new IOException("Corrupted cache file " + pageFile);
+			return components;
+		} finally {
+			input.close();
+		}
+	}
+
+	private void writePage(List<Component> components, File pageFile) throws IOException {
+		// a temporary file is renamed so that other readers never see a page
+		// partially written
+		File temporaryFile = File.createTempFile("page", ".tmp", cacheDirectory);
+		BinaryComponentWriter writer = new BinaryComponentWriter(new FileOutputStream(temporaryFile));
+		try {
+			writer.writePage(components);
+		} finally {
+			writer.close();
+		}
+		moveTo(temporaryFile, pageFile);
+	}
+
+	private void moveTo(File temporaryFile, File file) throws IOException {
+		if (!temporaryFile.renameTo(file) && !file.isFile()) {
+			temporaryFile.delete();
+			throw new IOException("Unable to write the cache file " + file);
+		}
+		temporaryFile.delete();
+	}
+
+	private static String digest(File file) throws IOException {
+		MessageDigest messageDigest = messageDigest();
+		InputStream input = new DigestInputStream(new FileInputStream(file), messageDigest);
+		try {
+			byte[] buffer = new byte[8192];
+			while (input.read(buffer) >= 0)
+				continue;
+		} finally {
+			input.close();
+		}
+		return hex(messageDigest.digest());
+	}
+
+	private static String digest(String text) {
+		try {
+			return hex(messageDigest().digest(text.getBytes(UTF_8)));
+		} catch (IOException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+
+	private static MessageDigest messageDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String hex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder();
+		for (byte b : bytes)
+			hex.append(String.format("%02x", b));
+		return hex.toString();
+	}
+}
@@ -0,0 +1,105 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+import edworld.pdfreader4humans.util.PDFUtil;
+
+public class CompactPDFReader extends PDFReader {
+	private List<PageGeometry> pages = new ArrayList<PageGeometry>();
+
+	/**
+	 * Class responsible for reading PDF contents in the same order a human
+	 * would read them, keeping each page as a {@link PageGeometry} until its
+	 * components are requested. From then on the reader keeps the components
+	 * of that page, as PDFReader does. Writing or drawing a page that is still
+	 * compact creates its components only for that purpose.
+	 *
+	 * @param url
+	 *            the PDF's location
+	 * @param componentLocator
+	 *            an instance of a PDFComponentLocator subclass such as
+	 *            MainPDFComponentLocator
+	 * @param boxDetector
+	 *            an instance of a BoxDetector subclass such as MainBoxDetector
+	 * @param marginDetector
+	 *            an instance of a MarginDetector subclass such as
+	 *            MainMarginDetector
+	 * @throws IOException
+	 */
+	public CompactPDFReader(URL url, PDFComponentLocator componentLocator, BoxDetector boxDetector,
+			MarginDetector marginDetector) throws IOException {
+		this(url, componentLocator, boxDetector, marginDetector, 0);
+	}
+
+	/**
+	 * Class responsible for reading PDF contents in the same order a human
+	 * would read them, keeping each page as a {@link PageGeometry} until its
+	 * components are requested. From then on the reader keeps the components
+	 * of that page, as PDFReader does. Writing or drawing a page that is still
+	 * compact creates its components only for that purpose.
+	 *
+	 * @param url
+	 *            the PDF's location
+	 * @param componentLocator
+	 *            an instance of a PDFComponentLocator subclass such as
+	 *            MainPDFComponentLocator
+	 * @param boxDetector
+	 *            an instance of a BoxDetector subclass such as MainBoxDetector
+	 * @param marginDetector
+	 *            an instance of a MarginDetector subclass such as
+	 *            MainMarginDetector
+	 * @param tolerance
+	 *            tolerance used to verify containment of components
+	 * @throws IOException
+	 */
+	public CompactPDFReader(URL url, PDFComponentLocator componentLocator, BoxDetector boxDetector,
+			MarginDetector marginDetector, float tolerance) throws IOException {
+		super(url, tolerance);
+		PDDocument doc = PDFUtil.load(url);
+		try {
+			for (int index = 0; index < doc.getNumberOfPages(); index++) {
+				pageBoxes.add(new PageBox(doc.getPage(index)));
+				pages.add(new PageGeometry(readPage(new PDFPage(index, doc.getPage(index), doc), componentLocator,
+						boxDetector, marginDetector)));
+				firstLevel.add(null);
+			}
+		} finally {
+			doc.close();
+		}
+	}
+
+	@Override
+	public synchronized List<Component> getFirstLevelComponents(int pageNumber) {
+		List<Component> pageFirstLevelComponents = firstLevel.get(pageNumber - 1);
+		if (pageFirstLevelComponents == null) {
+			pageFirstLevelComponents = pages.get(pageNumber - 1).toComponents();
+			firstLevel.set(pageNumber - 1, pageFirstLevelComponents);
+			pages.set(pageNumber - 1, null);
+		}
+		return pageFirstLevelComponents;
+	}
+
+	@Override
+	protected List<Component> getComponentsToWrite(int pageNumber) {
+		PageGeometry geometry;
+		synchronized (this) {
+			List<Component> pageFirstLevelComponents = firstLevel.get(pageNumber - 1);
+			if (pageFirstLevelComponents != null)
+				return pageFirstLevelComponents;
+			geometry = pages.get(pageNumber - 1);
+		}
+		return geometry.toComponents();
+	}
+
+	@Override
+	public synchronized PageGeometry getPageGeometry(int pageNumber) {
+		PageGeometry geometry = pages.get(pageNumber - 1);
+		return geometry != null ? geometry : super.getPageGeometry(pageNumber);
+	}
+}
@@ -3,22 +3,25 @@ package edworld.pdfreader4humans;
 
 import static edworld.pdfreader4humans.TextComponent.UNDERLINE_TOLERANCE;
 import static java.util.Collections.sort;
-import static java.util.regex.Matcher.quoteReplacement;
 
+import java.io.IOException;
+import java.io.Writer;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
-public abstract class Component implements Comparable<Component> {
+import edworld.pdfreader4humans.util.Template;
+import edworld.pdfreader4humans.util.TemplateFields;
+
+public abstract class Component implements Comparable<Component>, TemplateFields {
 	protected String type;
 	protected float fromX;
 	protected float fromY;
 	protected float toX;
 	protected float toY;
-	private List<Component> children = new ArrayList<Component>();
+	private List<Component> children;
 
 	public Component(String type, float fromX, float fromY, float toX, float toY) {
 		this.type = type;
@@ -48,12 +51,24 @@ public abstract class Component implements Comparable<Component> {
 		return toY;
 	}
 
+	/**
+	 * The children of this component. Leaves do not keep a list of their own
+	 * until a child is added, so they get a view that allocates it then.
+	 */
 	public List<Component> getChildren() {
+		if (children == null)
+			return new Children();
 		return children;
 	}
 
 	public void addChild(Component component) {
-		getChildren().add(component);
+		children().add(component);
+	}
+
+	private List<Component> children() {
+		if (children == null)
+			children = new ArrayList<Component>(2);
+		return children;
 	}
 
 	public boolean contains(Component other) {
@@ -138,17 +153,44 @@ public abstract class Component implements Comparable<Component> {
 		return null;
 	}
 
+	@Override
+	public boolean writeField(String fieldName, Writer writer) throws IOException {
+		switch (fieldName) {
+		case "type":
+			writer.write(getType());
+			return true;
+		case "fromX":
+			writer.write(String.valueOf(getFromX()));
+			return true;
+		case "fromY":
+			writer.write(String.valueOf(getFromY()));
+			return true;
+		case "toX":
+			writer.write(String.valueOf(getToX()));
+			return true;
+		case "toY":
+			writer.write(String.valueOf(getToY()));
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * @deprecated the fields are written by {@link #writeField}; an override
+	 *             of this method is still applied to the XML of the component
+	 */
+	@Deprecated
 	public String output(String template) {
-		String output = fillTemplate(template, "type", getType());
-		output = fillTemplate(output, "fromX", getFromX());
-		output = fillTemplate(output, "fromY", getFromY());
-		output = fillTemplate(output, "toX", getToX());
-		output = fillTemplate(output, "toY", getToY());
-		return output;
+		return Template.fill(template, this);
 	}
 
+	/**
+	 * @deprecated the fields are written by {@link #writeField}
+	 */
+	@Deprecated
 	protected String fillTemplate(String template, String fieldName, Object fieldValue) {
-		return template.replaceAll("\\$\\{" + fieldName + "\\}", quoteReplacement(fieldValue.toString()));
+		return template.replace("${" + fieldName + "}", fieldValue.toString());
 	}
 
 	@Override
@@ -174,46 +216,13 @@ public abstract class Component implements Comparable<Component> {
 		return verticalComponents;
 	}
 
+	/**
+	 * Sorts the components in reading order.
+	 *
+	 * @see ReadingOrder
+	 */
 	public static <T extends Component> void smartSort(List<T> list) {
-		Map<T, List<T>> mapRemovedAfter = new HashMap<T, List<T>>();
-		Map<T, T> mapRemovedBefore = new HashMap<T, T>();
-		for (int i = 0; i < list.size(); i++) {
-			T component1 = list.get(i);
-			for (int j = i + 1; j < list.size(); j++) {
-				T component2 = list.get(j);
-				if (!component1.verticallyBefore(component2) && !component1.verticallyAfter(component2)) {
-					T afterComponent;
-					T beforeComponent;
-					if (component1.compareTo(component2) < 0) {
-						afterComponent = component2;
-						beforeComponent = component1;
-					} else {
-						afterComponent = component1;
-						beforeComponent = component2;
-					}
-					if (!mapRemovedBefore.containsKey(beforeComponent)) {
-						while (mapRemovedBefore.containsKey(afterComponent))
-							afterComponent = mapRemovedBefore.get(afterComponent);
-						if (!mapRemovedAfter.containsKey(afterComponent))
-							mapRemovedAfter.put(afterComponent, new ArrayList<T>());
-						if (mapRemovedAfter.containsKey(beforeComponent)) {
-							mapRemovedAfter.get(afterComponent).addAll(mapRemovedAfter.get(beforeComponent));
-							mapRemovedAfter.remove(beforeComponent);
-						}
-						mapRemovedAfter.get(afterComponent).add(beforeComponent);
-						mapRemovedBefore.put(beforeComponent, afterComponent);
-					}
-				}
-			}
-		}
-		for (T componentAfter : mapRemovedAfter.keySet())
-			list.removeAll(mapRemovedAfter.get(componentAfter));
-		Collections.sort(list);
-		for (T componentAfter : mapRemovedAfter.keySet()) {
-			List<T> beforeList = mapRemovedAfter.get(componentAfter);
-			smartSort(beforeList);
-			list.addAll(list.indexOf(componentAfter), beforeList);
-		}
+		ReadingOrder.sort(list);
 	}
 
 	public static Comparator<Component> orderByYX() {
@@ -244,4 +253,35 @@ public abstract class Component implements Comparable<Component> {
 		return getToY() > component.getFromY() && getToY() - component.getToY() <= UNDERLINE_TOLERANCE
 				&& getFromX() <= component.getToX() && getToX() >= component.getFromX();
 	}
+
+	/**
+	 * Live view of the children, backed by the list of the component as soon
+	 * as it exists.
+	 */
+	private class Children extends AbstractList<Component> {
+		@Override
+		public Component get(int index) {
+			return children == null ? Collections.<Component> emptyList().get(index) : children.get(index);
+		}
+
+		@Override
+		public int size() {
+			return children == null ? 0 : children.size();
+		}
+
+		@Override
+		public Component set(int index, Component component) {
+			return children().set(index, component);
+		}
+
+		@Override
+		public void add(int index, Component component) {
+			children().add(index, component);
+		}
+
+		@Override
+		public Component remove(int index) {
+			return children().remove(index);
+		}
+	}
 }
@@ -0,0 +1,130 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans;
+
+import static java.lang.Math.abs;
+import static java.lang.Math.ceil;
+import static java.lang.Math.floor;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.Math.sqrt;
+
+import java.util.List;
+
+/**
+ * Uniform grid over a list of containers, used to find the smallest container
+ * of a component without testing every container. Results are the same as a
+ * linear scan of the list, including the choice among containers with the
+ * same area.
+ */
+public class ContainerIndex {
+	private static final int MAX_COLUMNS = 64;
+	private List<? extends Component> containers;
+	private float tolerance;
+	private float minX, minY, cellWidth, cellHeight;
+	private int columns, rows;
+	private int[][] cells;
+
+	public ContainerIndex(List<? extends Component> containers, float tolerance) {
+		this.containers = containers;
+		this.tolerance = tolerance;
+		// a containing component's corner lies inside the container enlarged
+		// by the tolerance; one more point absorbs rounding differences
+		float margin = abs(tolerance) + 1;
+		float maxX = Float.NEGATIVE_INFINITY;
+		float maxY = Float.NEGATIVE_INFINITY;
+		minX = Float.POSITIVE_INFINITY;
+		minY = Float.POSITIVE_INFINITY;
+		for (Component container : containers) {
+			minX = finiteMin(minX, min(container.getFromX(), container.getToX()) - margin);
+			minY = finiteMin(minY, min(container.getFromY(), container.getToY()) - margin);
+			maxX = finiteMax(maxX, max(container.getFromX(), container.getToX()) + margin);
+			maxY = finiteMax(maxY, max(container.getFromY(), container.getToY()) + margin);
+		}
+		if (minX > maxX)
+			minX = maxX = 0;
+		if (minY > maxY)
+			minY = maxY = 0;
+		columns = rows = max(1, min(MAX_COLUMNS, (int) ceil(sqrt(containers.size()))));
+		cellWidth = maxX > minX ? (maxX - minX) / columns : 1;
+		cellHeight = maxY > minY ? (maxY - minY) / rows : 1;
+		buildCells(margin);
+	}
+
+	private void buildCells(float margin) {
+		int[] sizes = new int[columns * rows];
+		for (Component container : containers)
+			for (int row = firstRow(container, margin); row <= lastRow(container, margin); row++)
+				for (int column = firstColumn(container, margin); column <= lastColumn(container, margin); column++)
+					sizes[row * columns + column]++;
+		cells = new int[columns * rows][];
+		for (int cell = 0; cell < cells.length; cell++)
+			cells[cell] = new int[sizes[cell]];
+		int[] filled = new int[columns * rows];
+		for (int index = 0; index < containers.size(); index++) {
+			Component container = containers.get(index);
+			for (int row = firstRow(container, margin); row <= lastRow(container, margin); row++)
+				for (int column = firstColumn(container, margin); column <= lastColumn(container, margin); column++) {
+					int cell = row * columns + column;
+					cells[cell][filled[cell]++] = index;
+				}
+		}
+	}
+
+	/**
+	 * Finds the smallest container that contains the component within the
+	 * tolerance.
+	 *
+	 * @return the container, or null if there is none
+	 */
+	public Component findContainer(Component component) {
+		Component container = null;
+		float area = Float.POSITIVE_INFINITY;
+		if (component.getFromX() <= component.getToX() && component.getFromY() <= component.getToY()) {
+			for (int index : cells[row(component.getToY()) * columns + column(component.getFromX())]) {
+				Component possibleContainer = containers.get(index);
+				if (possibleContainer.contains(component, tolerance) && possibleContainer.getArea() < area) {
+					container = possibleContainer;
+					area = possibleContainer.getArea();
+				}
+			}
+		} else
+			for (Component possibleContainer : containers)
+				if (possibleContainer.contains(component, tolerance) && possibleContainer.getArea() < area) {
+					container = possibleContainer;
+					area = possibleContainer.getArea();
+				}
+		return container;
+	}
+
+	private int firstColumn(Component container, float margin) {
+		return column(min(container.getFromX(), container.getToX()) - margin);
+	}
+
+	private int lastColumn(Component container, float margin) {
+		return column(max(container.getFromX(), container.getToX()) + margin);
+	}
+
+	private int firstRow(Component container, float margin) {
+		return row(min(container.getFromY(), container.getToY()) - margin);
+	}
+
+	private int lastRow(Component container, float margin) {
+		return row(max(container.getFromY(), container.getToY()) + margin);
+	}
+
+	private int column(float x) {
+		return (int) max(0, min(columns - 1, floor((x - minX) / cellWidth)));
+	}
+
+	private int row(float y) {
+		return (int) max(0, min(rows - 1, floor((y - minY) / cellHeight)));
+	}
+
+	private float finiteMin(float value1, float value2) {
+		return Float.isInfinite(value2) || Float.isNaN(value2) ? value1 : min(value1, value2);
+	}
+
+	private float finiteMax(float value1, float value2) {
+		return Float.isInfinite(value2) || Float.isNaN(value2) ? value1 : max(value1, value2);
+	}
+}
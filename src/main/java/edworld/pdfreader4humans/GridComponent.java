@@ -1,6 +1,9 @@
 // This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
 package edworld.pdfreader4humans;
 
+import java.io.IOException;
+import java.io.Writer;
+
 public class GridComponent extends Component {
 	private float lineWidth;
 
@@ -13,9 +16,22 @@ public class GridComponent extends Component {
 		return lineWidth;
 	}
 
+	@Override
+	public boolean writeField(String fieldName, Writer writer) throws IOException {
+		if (fieldName.equals("lineWidth")) {
+			writer.write(String.valueOf(getLineWidth()));
+			return true;
+		}
+		return super.writeField(fieldName, writer);
+	}
+
+	/**
+	 * @deprecated the fields are written by {@link #writeField}
+	 */
+	@Deprecated
 	@Override
 	public String output(String template) {
-		return fillTemplate(super.output(template), "lineWidth", getLineWidth());
+		return super.output(template);
 	}
 
 	@Override
@@ -0,0 +1,37 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.lang.Math.max;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Images released after a page is rendered, reused for the next pages. An
+ * image too small for a page is replaced by a larger one, so the pool never
+ * holds more images than the pages rendered at the same time.
+ */
+class ImagePool {
+	private List<BufferedImage> images = new ArrayList<BufferedImage>();
+
+	/**
+	 * An image at least as large as the given size.
+	 */
+	public synchronized BufferedImage borrow(int width, int height) {
+		for (int index = 0; index < images.size(); index++)
+			if (images.get(index).getWidth() >= width && images.get(index).getHeight() >= height)
+				return images.remove(index);
+		if (!images.isEmpty()) {
+			BufferedImage smallImage = images.remove(images.size() - 1);
+			width = max(width, smallImage.getWidth());
+			height = max(height, smallImage.getHeight());
+		}
+		return new BufferedImage(width, height, TYPE_INT_ARGB);
+	}
+
+	public synchronized void release(BufferedImage image) {
+		images.add(image);
+	}
+}
@@ -0,0 +1,159 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Finds the components connected by intersections with a sweep over x. The
+ * components reached by the sweep line are kept active in a segment tree over
+ * the components ordered by fromY, holding the largest toY of the active ones,
+ * so each component only visits the active components whose vertical extents
+ * overlap its own. Intersecting components are joined in a union-find
+ * structure as they are found.
+ */
+class IntersectionSweep {
+	private List<? extends Component> components;
+	private int[] parents;
+	private boolean[] intersecting;
+	private int[] indexes;
+	private float[] fromYs;
+	private float[] maxToY;
+
+	public IntersectionSweep(final List<? extends Component> components) {
+		this.components = components;
+		int size = components.size();
+		parents = new int[size];
+		for (int index = 0; index < size; index++)
+			parents[index] = index;
+		intersecting = new boolean[size];
+		Integer[] byFromY = sortedIndexes(new Comparator<Integer>() {
+			@Override
+			public int compare(Integer index1, Integer index2) {
+				return Float.compare(components.get(index1).getFromY(), components.get(index2).getFromY());
+			}
+		});
+		indexes = new int[size];
+		fromYs = new float[size];
+		int[] positions = new int[size];
+		for (int position = 0; position < size; position++) {
+			indexes[position] = byFromY[position];
+			fromYs[position] = components.get(indexes[position]).getFromY();
+			positions[indexes[position]] = position;
+		}
+		maxToY = new float[4 * max(1, size)];
+		Arrays.fill(maxToY, Float.NEGATIVE_INFINITY);
+		Integer[] byLeft = sortedIndexes(new Comparator<Integer>() {
+			@Override
+			public int compare(Integer index1, Integer index2) {
+				return Float.compare(left(components.get(index1)), left(components.get(index2)));
+			}
+		});
+		for (int index : byLeft) {
+			Component component = components.get(index);
+			int end = reaching(component.getToY());
+			if (end > 0)
+				connect(1, 0, size, end, index);
+			activate(1, 0, size, positions[index], component.getToY());
+		}
+	}
+
+	/**
+	 * @return whether the component intersects some other one
+	 */
+	public boolean isIntersecting(int index) {
+		return intersecting[index];
+	}
+
+	/**
+	 * @return the index of the component representing the connected
+	 *         components of the given one
+	 */
+	public int findRoot(int index) {
+		while (parents[index] != index) {
+			parents[index] = parents[parents[index]];
+			index = parents[index];
+		}
+		return index;
+	}
+
+	private Integer[] sortedIndexes(Comparator<Integer> comparator) {
+		Integer[] sorted = new Integer[components.size()];
+		for (int index = 0; index < sorted.length; index++)
+			sorted[index] = index;
+		Arrays.sort(sorted, comparator);
+		return sorted;
+	}
+
+	/**
+	 * Number of positions whose fromY is not after the given y.
+	 */
+	private int reaching(float y) {
+		int end = 0;
+		int high = fromYs.length;
+		while (end < high) {
+			int middle = (end + high) >>> 1;
+			if (fromYs[middle] <= y)
+				end = middle + 1;
+			else
+				high = middle;
+		}
+		return end;
+	}
+
+	/**
+	 * Joins the component with the active ones before the end position that
+	 * intersect it, deactivating those left behind by the sweep.
+	 */
+	private void connect(int node, int from, int to, int end, int index) {
+		Component component = components.get(index);
+		if (from >= end || !(maxToY[node] >= component.getFromY()))
+			return;
+		if (to - from == 1) {
+			Component activeComponent = components.get(indexes[from]);
+			if (right(activeComponent) < left(component))
+				maxToY[node] = Float.NEGATIVE_INFINITY;
+			else if (activeComponent.intersects(component))
+				join(indexes[from], index);
+			return;
+		}
+		int middle = (from + to) >>> 1;
+		connect(2 * node, from, middle, end, index);
+		connect(2 * node + 1, middle, to, end, index);
+		maxToY[node] = max(maxToY[2 * node], maxToY[2 * node + 1]);
+	}
+
+	private void activate(int node, int from, int to, int position, float toY) {
+		if (to - from == 1) {
+			maxToY[node] = Float.isNaN(toY) ? Float.NEGATIVE_INFINITY : toY;
+			return;
+		}
+		int middle = (from + to) >>> 1;
+		if (position < middle)
+			activate(2 * node, from, middle, position, toY);
+		else
+			activate(2 * node + 1, middle, to, position, toY);
+		maxToY[node] = max(maxToY[2 * node], maxToY[2 * node + 1]);
+	}
+
+	private void join(int index1, int index2) {
+		intersecting[index1] = true;
+		intersecting[index2] = true;
+		int root1 = findRoot(index1);
+		int root2 = findRoot(index2);
+		if (root1 != root2)
+			parents[root2] = root1;
+	}
+
+	private float left(Component component) {
+		return min(component.getFromX(), component.getToX());
+	}
+
+	private float right(Component component) {
+		return max(component.getFromX(), component.getToX());
+	}
+}
@@ -0,0 +1,100 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URL;
+import java.util.List;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+import edworld.pdfreader4humans.util.PDFUtil;
+
+public class LazyPDFReader extends PDFReader implements Closeable {
+	private PDDocument doc;
+	private PDFComponentLocator componentLocator;
+	private BoxDetector boxDetector;
+	private MarginDetector marginDetector;
+
+	/**
+	 * Class responsible for reading PDF contents in the same order a human
+	 * would read them, analysing each page only the first time it is
+	 * requested. The PDF is kept open until the reader is closed.
+	 *
+	 * @param url
+	 *            the PDF's location
+	 * @param componentLocator
+	 *            an instance of a PDFComponentLocator subclass such as
+	 *            MainPDFComponentLocator
+	 * @param boxDetector
+	 *            an instance of a BoxDetector subclass such as MainBoxDetector
+	 * @param marginDetector
+	 *            an instance of a MarginDetector subclass such as
+	 *            MainMarginDetector
+	 * @throws IOException
+	 */
+	public LazyPDFReader(URL url, PDFComponentLocator componentLocator, BoxDetector boxDetector,
+			MarginDetector marginDetector) throws IOException {
+		this(url, componentLocator, boxDetector, marginDetector, 0);
+	}
+
+	/**
+	 * Class responsible for reading PDF contents in the same order a human
+	 * would read them, analysing each page only the first time it is
+	 * requested. The PDF is kept open until the reader is closed.
+	 *
+	 * @param url
+	 *            the PDF's location
+	 * @param componentLocator
+	 *            an instance of a PDFComponentLocator subclass such as
+	 *            MainPDFComponentLocator
+	 * @param boxDetector
+	 *            an instance of a BoxDetector subclass such as MainBoxDetector
+	 * @param marginDetector
+	 *            an instance of a MarginDetector subclass such as
+	 *            MainMarginDetector
+	 * @param tolerance
+	 *            tolerance used to verify containment of components
+	 * @throws IOException
+	 */
+	public LazyPDFReader(URL url, PDFComponentLocator componentLocator, BoxDetector boxDetector,
+			MarginDetector marginDetector, float tolerance) throws IOException {
+		super(url, tolerance);
+		this.componentLocator = componentLocator;
+		this.boxDetector = boxDetector;
+		this.marginDetector = marginDetector;
+		doc = PDFUtil.load(url);
+		for (int pageIndex = 0; pageIndex < doc.getNumberOfPages(); pageIndex++) {
+			pageBoxes.add(new PageBox(doc.getPage(pageIndex)));
+			firstLevel.add(null);
+		}
+	}
+
+	@Override
+	public synchronized List<Component> getFirstLevelComponents(int pageNumber) {
+		List<Component> pageFirstLevelComponents = firstLevel.get(pageNumber - 1);
+		if (pageFirstLevelComponents == null) {
+			if (doc == null)
+				throw new IllegalStateException("Page " + pageNumber + " was not read before the reader was closed.");
+			try {
+				pageFirstLevelComponents = readPage(new PDFPage(pageNumber - 1, doc.getPage(pageNumber - 1), doc),
+						componentLocator, boxDetector, marginDetector);
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+			firstLevel.set(pageNumber - 1, pageFirstLevelComponents);
+		}
+		return pageFirstLevelComponents;
+	}
+
+	/**
+	 * Closes the PDF. Pages already read remain available.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (doc != null) {
+			doc.close();
+			doc = null;
+		}
+	}
+}
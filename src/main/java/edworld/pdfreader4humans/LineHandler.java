@@ -0,0 +1,8 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans;
+
+import java.io.IOException;
+
+public interface LineHandler {
+	void handleLine(String line) throws IOException;
+}
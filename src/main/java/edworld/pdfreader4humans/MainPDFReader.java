@@ -1,10 +1,10 @@
 package edworld.pdfreader4humans;
 
-import static org.apache.commons.io.FileUtils.writeLines;
-import static org.apache.commons.io.FileUtils.writeStringToFile;
+import static org.apache.commons.io.FileUtils.openOutputStream;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 
 import edworld.pdfreader4humans.impl.MainBoxDetector;
 import edworld.pdfreader4humans.impl.MainMarginDetector;
@@ -18,9 +18,14 @@ public class MainPDFReader {
 			return;
 		}
 		PDFReader reader = new PDFReader(new File(args[1]).toURI().toURL(), new MainPDFComponentLocator(), new MainBoxDetector(), new MainMarginDetector());
-		if (args[0].equals("-toXML"))
-			writeStringToFile(new File(args[2]), reader.toXML(), "UTF-8");
-		else
-			writeLines(new File(args[2]), "UTF-8", reader.toTextLines());
+		OutputStream output = openOutputStream(new File(args[2]));
+		try {
+			if (args[0].equals("-toXML"))
+				reader.toXML(output);
+			else
+				reader.toText(output);
+		} finally {
+			output.close();
+		}
 	}
 }
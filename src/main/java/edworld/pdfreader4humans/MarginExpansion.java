@@ -0,0 +1,621 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans;
+
+import static java.lang.Math.abs;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.util.Collections.sort;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Joins each margin of a page with the component right above or below it
+ * when both have nearly the same horizontal extent, as long as margins can
+ * be joined.
+ * <p>
+ * The margins are checked in the order of the list and the earliest one that
+ * can be joined is joined first. After a join only the margins whose
+ * neighbours may have changed are checked again: those that were compared
+ * with one of the joined components, and those the new margin may now be the
+ * neighbour of, found by a query on the same segment tree used to find the
+ * neighbours.
+ * <p>
+ * The list is sorted when the first margin is joined, and after each join
+ * the new margin goes where sorting the list again would put it. While the
+ * list is a single ascending run, that is the place found by the binary
+ * insertion or the gallop of {@link java.util.Collections#sort}, and the new
+ * margin takes a free slot there when there is one. When components overlap
+ * vertically their order is not transitive and the list may stop being a
+ * single run; then it is sorted again and every margin is checked again.
+ * <p>
+ * So the places follow the TimSort of the JDK: binary insertion in runs
+ * shorter than {@code MIN_MERGE}, galloping from the start of longer ones.
+ * Where the order is not transitive, another sort algorithm could place the
+ * new margin elsewhere. MarginExpansionTest checks these places against
+ * {@link java.util.Collections#sort} of the JDK in use.
+ */
+class MarginExpansion {
+	private static final int MIN_MERGE = 32;
+	private List<Component> components;
+	private boolean sorted;
+	private int descents;
+	private Component[] slots;
+	private Map<Component, Integer> positions = new HashMap<Component, Integer>();
+	private float[] maxFromY;
+	private float[] maxToY;
+	private float[] minFromX;
+	private float[] maxToX;
+	private int[] occupied;
+	private Map<Component, Neighbors> checkedMargins = new HashMap<Component, Neighbors>();
+	private Map<Component, List<Neighbors>> watchers = new HashMap<Component, List<Neighbors>>();
+	private int[] maxUpperEnd;
+	private int[] minUpper;
+	private int[] maxLower;
+	private float[] minCheckedFromY;
+	private float[] minCheckedToY;
+	private float[] minCheckedFromX;
+	private float[] maxCheckedToX;
+	private TreeSet<Component> pending;
+
+	public MarginExpansion(List<Component> components) {
+		this.components = components;
+		update(components);
+	}
+
+	public void expand() {
+		pendAllMargins();
+		while (!pending.isEmpty()) {
+			Component margin = pending.pollFirst();
+			Neighbors neighbors = new Neighbors(margin);
+			int end = firstReaching(1, 0, slots.length, margin.getFromY());
+			neighbors.upperEnd = get(end);
+			neighbors.upper = get(last(1, 0, slots.length, end, margin));
+			if (aligned(neighbors.upper, margin)) {
+				join(margin, neighbors.upper);
+				continue;
+			}
+			neighbors.lower = get(first(1, 0, slots.length, margin));
+			if (aligned(neighbors.lower, margin)) {
+				join(margin, neighbors.lower);
+				continue;
+			}
+			check(neighbors);
+		}
+		if (sorted) {
+			components.clear();
+			components.addAll(occupiedSlots());
+		}
+	}
+
+	private void pendAllMargins() {
+		pending = new TreeSet<Component>(new Comparator<Component>() {
+			@Override
+			public int compare(Component component1, Component component2) {
+				return positions.get(component1) - positions.get(component2);
+			}
+		});
+		for (Component component : slots)
+			if (component instanceof MarginComponent)
+				pending.add(component);
+	}
+
+	private boolean aligned(Component nearComponent, Component margin) {
+		return nearComponent != null && abs(nearComponent.getFromX() - margin.getFromX()) < 1
+				&& abs(nearComponent.getToX() - margin.getToX()) < 1;
+	}
+
+	private void check(Neighbors neighbors) {
+		checkedMargins.put(neighbors.margin, neighbors);
+		for (Component neighbor : new Component[] { neighbors.upperEnd, neighbors.upper, neighbors.lower })
+			if (neighbor != null) {
+				List<Neighbors> list = watchers.get(neighbor);
+				if (list == null) {
+					list = new ArrayList<Neighbors>(2);
+					watchers.put(neighbor, list);
+				}
+				list.add(neighbors);
+			}
+		set(1, 0, slots.length, position(neighbors.margin));
+	}
+
+	private void uncheck(Component margin, List<Component> affected) {
+		checkedMargins.remove(margin);
+		affected.add(margin);
+		set(1, 0, slots.length, position(margin));
+	}
+
+	private void join(Component margin, Component nearComponent) {
+		MarginComponent newMargin = joined(margin, nearComponent);
+		pending.remove(nearComponent);
+		checkedMargins.remove(nearComponent);
+		checkedMargins.remove(margin);
+		List<Component> affected = new ArrayList<Component>();
+		for (Component joined : new Component[] { margin, nearComponent }) {
+			List<Neighbors> list = watchers.remove(joined);
+			if (list != null)
+				for (Neighbors neighbors : list)
+					if (checkedMargins.get(neighbors.margin) == neighbors)
+						uncheck(neighbors.margin, affected);
+		}
+		set(positions.remove(nearComponent), null);
+		set(positions.remove(margin), null);
+		if (!sorted || descents > 0) {
+			// sorting the whole list may move other components as well, so
+			// every margin has new neighbours
+			List<Component> list = occupiedSlots();
+			list.add(newMargin);
+			sort(list);
+			sorted = true;
+			checkedMargins.clear();
+			watchers.clear();
+			update(list);
+			pendAllMargins();
+			return;
+		}
+		insert(newMargin);
+		collectAffected(1, 0, slots.length, position(newMargin), newMargin, affected);
+		pending.addAll(affected);
+		pending.add(newMargin);
+	}
+
+	/**
+	 * Checked margins the new margin, at the given position, may now be the
+	 * upper end, upper or lower neighbour of. Subtrees whose checked margins
+	 * were all compared with components before that position, or cannot
+	 * reach or cross the new margin, are skipped.
+	 */
+	private void collectAffected(int node, int from, int to, int position, Component newMargin,
+			List<Component> affected) {
+		if (!mayBeAffected(node, position, newMargin))
+			return;
+		if (to - from == 1) {
+			Neighbors neighbors = slots[from] == null ? null : checkedMargins.get(slots[from]);
+			if (neighbors != null && neighbors.affectedBy(newMargin, position)) {
+				checkedMargins.remove(slots[from]);
+				affected.add(slots[from]);
+				setLeaf(node, from);
+			}
+			return;
+		}
+		int middle = (from + to) >>> 1;
+		collectAffected(2 * node, from, middle, position, newMargin, affected);
+		collectAffected(2 * node + 1, middle, to, position, newMargin, affected);
+		join(node);
+	}
+
+	private boolean mayBeAffected(int node, int position, Component newMargin) {
+		boolean crossing = minCheckedFromX[node] <= newMargin.getToX() && maxCheckedToX[node] >= newMargin.getFromX();
+		if (maxUpperEnd[node] > position
+				&& (minCheckedFromY[node] <= newMargin.getToY() || crossing && minUpper[node] < position))
+			return true;
+		return maxLower[node] > position && crossing && minCheckedToY[node] < newMargin.getFromY();
+	}
+
+	private MarginComponent joined(Component margin, Component nearComponent) {
+		float fromX = min(margin.getFromX(), nearComponent.getFromX());
+		float fromY = min(margin.getFromY(), nearComponent.getFromY());
+		float toX = max(margin.getToX(), nearComponent.getToX());
+		float toY = max(margin.getToY(), nearComponent.getToY());
+		MarginComponent newMargin = new MarginComponent(fromX, fromY, toX, toY);
+		for (Component child : margin.getChildren())
+			newMargin.addChild(child);
+		newMargin.addChild(nearComponent);
+		sort(newMargin.getChildren());
+		return newMargin;
+	}
+
+	/**
+	 * Places the component where sorting the occupied slots with it appended
+	 * would. A free slot between its neighbours is taken when there is one;
+	 * otherwise the components up to a free slot nearby move towards it.
+	 * When there is none, or most slots are free, the slots are created again
+	 * without the free ones.
+	 */
+	private void insert(Component component) {
+		int left = sortedRank(component);
+		int previous = left > 0 ? select(left - 1) : -1;
+		int next = left < occupied[1] ? select(left) : slots.length;
+		if (2 * (slots.length - occupied[1]) <= slots.length) {
+			if (next - previous > 1) {
+				set(previous + 1, component);
+				return;
+			}
+			int freeBefore = lastFree(1, 0, slots.length, previous);
+			int freeAfter = firstFree(1, 0, slots.length, next);
+			int limit = max(MIN_MERGE, slots.length / MIN_MERGE);
+			if (freeBefore >= 0 && previous - freeBefore <= limit
+					&& (freeAfter == slots.length || previous - freeBefore <= freeAfter - next)) {
+				for (int position = freeBefore; position < previous; position++)
+					move(position + 1, position);
+				set(previous, component);
+				return;
+			}
+			if (freeAfter < slots.length && freeAfter - next <= limit) {
+				for (int position = freeAfter; position > next; position--)
+					move(position - 1, position);
+				set(next, component);
+				return;
+			}
+		}
+		List<Component> list = new ArrayList<Component>(occupied[1] + 1);
+		for (int position = 0; position < slots.length; position++) {
+			if (position == next)
+				list.add(component);
+			if (slots[position] != null)
+				list.add(slots[position]);
+		}
+		if (next == slots.length)
+			list.add(component);
+		update(list);
+	}
+
+	/**
+	 * Rank that {@link java.util.Collections#sort} gives to a component
+	 * appended to the occupied slots when they form a single ascending run:
+	 * the run is extended when the component is not less than its last
+	 * element; otherwise short lists use binary insertion and longer ones
+	 * merge the component into the run after galloping from its start.
+	 */
+	int sortedRank(Component component) {
+		int size = occupied[1];
+		if (size == 0)
+			return 0;
+		Component last = slots[select(size - 1)];
+		if (component.compareTo(last) >= 0)
+			return size;
+		if (size + 1 < MIN_MERGE)
+			return binarySearch(component, 0, size);
+		int rank = 0;
+		if (component.compareTo(slots[select(0)]) >= 0) {
+			int offset = 1;
+			int lastOffset = 0;
+			while (offset < size && component.compareTo(slots[select(offset)]) >= 0) {
+				lastOffset = offset;
+				offset = (offset << 1) + 1;
+				if (offset <= 0)
+					offset = size;
+			}
+			rank = binarySearch(component, lastOffset + 1, min(offset, size));
+		}
+		return rank < size && last.compareTo(component) > 0 ? rank : size;
+	}
+
+	/**
+	 * First rank in the range whose component is greater than the given one,
+	 * probing as the binary searches of {@link java.util.Collections#sort}.
+	 */
+	private int binarySearch(Component component, int from, int to) {
+		while (from < to) {
+			int middle = (from + to) >>> 1;
+			if (component.compareTo(slots[select(middle)]) < 0)
+				to = middle;
+			else
+				from = middle + 1;
+		}
+		return from;
+	}
+
+	/**
+	 * Position of the occupied slot with the given rank.
+	 */
+	private int select(int rank) {
+		int node = 1;
+		int from = 0;
+		int to = slots.length;
+		while (to - from > 1) {
+			int middle = (from + to) >>> 1;
+			if (rank < occupied[2 * node]) {
+				node = 2 * node;
+				to = middle;
+			} else {
+				rank -= occupied[2 * node];
+				node = 2 * node + 1;
+				from = middle;
+			}
+		}
+		return from;
+	}
+
+	/**
+	 * Number of occupied slots before the position.
+	 */
+	private int rank(int position) {
+		int node = 1;
+		int from = 0;
+		int to = slots.length;
+		int rank = 0;
+		while (to - from > 1) {
+			int middle = (from + to) >>> 1;
+			if (position < middle) {
+				node = 2 * node;
+				to = middle;
+			} else {
+				rank += occupied[2 * node];
+				node = 2 * node + 1;
+				from = middle;
+			}
+		}
+		return position > from ? rank + occupied[node] : rank;
+	}
+
+	private int previous(int position) {
+		int rank = rank(position);
+		return rank > 0 ? select(rank - 1) : -1;
+	}
+
+	private int next(int position) {
+		int rank = rank(position + 1);
+		return rank < occupied[1] ? select(rank) : slots.length;
+	}
+
+	/**
+	 * Whether the components at the positions, the first one before the
+	 * second, are out of order, so the list is not a single ascending run.
+	 */
+	private int descent(int previous, int next) {
+		return previous >= 0 && next < slots.length && slots[next].compareTo(slots[previous]) < 0 ? 1 : 0;
+	}
+
+	private List<Component> occupiedSlots() {
+		List<Component> list = new ArrayList<Component>(occupied[1] + 1);
+		for (Component component : slots)
+			if (component != null)
+				list.add(component);
+		return list;
+	}
+
+	/**
+	 * Moves a component to a free slot, updating the margins compared with it.
+	 */
+	private void move(int from, int to) {
+		Component component = slots[from];
+		set(from, null);
+		set(to, component);
+		List<Neighbors> list = watchers.get(component);
+		if (list != null)
+			for (Iterator<Neighbors> iterator = list.iterator(); iterator.hasNext();) {
+				Neighbors neighbors = iterator.next();
+				if (checkedMargins.get(neighbors.margin) == neighbors)
+					set(1, 0, slots.length, position(neighbors.margin));
+				else
+					iterator.remove();
+			}
+	}
+
+	/**
+	 * Last free slot before the position, or -1.
+	 */
+	private int lastFree(int node, int from, int to, int before) {
+		if (from >= before || occupied[node] == to - from)
+			return -1;
+		if (to - from == 1)
+			return from;
+		int middle = (from + to) >>> 1;
+		int position = lastFree(2 * node + 1, middle, to, before);
+		return position >= 0 ? position : lastFree(2 * node, from, middle, before);
+	}
+
+	/**
+	 * First free slot after the position, or the number of slots.
+	 */
+	private int firstFree(int node, int from, int to, int after) {
+		if (to <= after + 1 || occupied[node] == to - from)
+			return slots.length;
+		if (to - from == 1)
+			return from;
+		int middle = (from + to) >>> 1;
+		int position = firstFree(2 * node, from, middle, after);
+		return position < slots.length ? position : firstFree(2 * node + 1, middle, to, after);
+	}
+
+	private Component get(int position) {
+		return position < 0 || position >= slots.length ? null : slots[position];
+	}
+
+	private int position(Component component) {
+		return component == null ? slots.length : positions.get(component);
+	}
+
+	private void update(List<Component> list) {
+		slots = list.toArray(new Component[list.size()]);
+		positions.clear();
+		for (int position = 0; position < slots.length; position++)
+			positions.put(slots[position], position);
+		int size = 4 * max(1, slots.length);
+		maxFromY = new float[size];
+		maxToY = new float[size];
+		minFromX = new float[size];
+		maxToX = new float[size];
+		occupied = new int[size];
+		maxUpperEnd = new int[size];
+		minUpper = new int[size];
+		maxLower = new int[size];
+		minCheckedFromY = new float[size];
+		minCheckedToY = new float[size];
+		minCheckedFromX = new float[size];
+		maxCheckedToX = new float[size];
+		if (slots.length > 0)
+			build(1, 0, slots.length);
+		descents = 0;
+		for (int position = 1; position < slots.length; position++)
+			descents += descent(position - 1, position);
+	}
+
+	private void build(int node, int from, int to) {
+		if (to - from == 1) {
+			setLeaf(node, from);
+			return;
+		}
+		int middle = (from + to) >>> 1;
+		build(2 * node, from, middle);
+		build(2 * node + 1, middle, to);
+		join(node);
+	}
+
+	private void set(int position, Component component) {
+		int previous = previous(position);
+		int next = next(position);
+		descents -= slots[position] == null ? descent(previous, next)
+				: descent(previous, position) + descent(position, next);
+		slots[position] = component;
+		if (component != null)
+			positions.put(component, position);
+		descents += component == null ? descent(previous, next)
+				: descent(previous, position) + descent(position, next);
+		set(1, 0, slots.length, position);
+	}
+
+	private void set(int node, int from, int to, int position) {
+		if (to - from == 1) {
+			setLeaf(node, position);
+			return;
+		}
+		int middle = (from + to) >>> 1;
+		if (position < middle)
+			set(2 * node, from, middle, position);
+		else
+			set(2 * node + 1, middle, to, position);
+		join(node);
+	}
+
+	/**
+	 * A free slot gets values that match no search. A slot whose margin is
+	 * checked also keeps the positions of the components it was compared
+	 * with.
+	 */
+	private void setLeaf(int node, int position) {
+		Component component = slots[position];
+		occupied[node] = component == null ? 0 : 1;
+		if (component == null) {
+			maxFromY[node] = Float.NEGATIVE_INFINITY;
+			maxToY[node] = Float.NEGATIVE_INFINITY;
+			minFromX[node] = Float.POSITIVE_INFINITY;
+			maxToX[node] = Float.NEGATIVE_INFINITY;
+		} else {
+			maxFromY[node] = notNaN(component.getFromY(), Float.NEGATIVE_INFINITY);
+			maxToY[node] = notNaN(component.getToY(), Float.NEGATIVE_INFINITY);
+			minFromX[node] = notNaN(component.getFromX(), Float.POSITIVE_INFINITY);
+			maxToX[node] = notNaN(component.getToX(), Float.NEGATIVE_INFINITY);
+		}
+		Neighbors neighbors = component == null ? null : checkedMargins.get(component);
+		if (neighbors == null) {
+			maxUpperEnd[node] = -1;
+			minUpper[node] = Integer.MAX_VALUE;
+			maxLower[node] = -1;
+			minCheckedFromY[node] = Float.POSITIVE_INFINITY;
+			minCheckedToY[node] = Float.POSITIVE_INFINITY;
+			minCheckedFromX[node] = Float.POSITIVE_INFINITY;
+			maxCheckedToX[node] = Float.NEGATIVE_INFINITY;
+			return;
+		}
+		maxUpperEnd[node] = position(neighbors.upperEnd);
+		minUpper[node] = neighbors.upper == null ? -1 : position(neighbors.upper);
+		maxLower[node] = position(neighbors.lower);
+		minCheckedFromY[node] = notNaN(component.getFromY(), Float.POSITIVE_INFINITY);
+		minCheckedToY[node] = notNaN(component.getToY(), Float.POSITIVE_INFINITY);
+		minCheckedFromX[node] = minFromX[node];
+		maxCheckedToX[node] = maxToX[node];
+	}
+
+	private void join(int node) {
+		maxFromY[node] = max(maxFromY[2 * node], maxFromY[2 * node + 1]);
+		maxToY[node] = max(maxToY[2 * node], maxToY[2 * node + 1]);
+		minFromX[node] = min(minFromX[2 * node], minFromX[2 * node + 1]);
+		maxToX[node] = max(maxToX[2 * node], maxToX[2 * node + 1]);
+		occupied[node] = occupied[2 * node] + occupied[2 * node + 1];
+		maxUpperEnd[node] = max(maxUpperEnd[2 * node], maxUpperEnd[2 * node + 1]);
+		minUpper[node] = min(minUpper[2 * node], minUpper[2 * node + 1]);
+		maxLower[node] = max(maxLower[2 * node], maxLower[2 * node + 1]);
+		minCheckedFromY[node] = min(minCheckedFromY[2 * node], minCheckedFromY[2 * node + 1]);
+		minCheckedToY[node] = min(minCheckedToY[2 * node], minCheckedToY[2 * node + 1]);
+		minCheckedFromX[node] = min(minCheckedFromX[2 * node], minCheckedFromX[2 * node + 1]);
+		maxCheckedToX[node] = max(maxCheckedToX[2 * node], maxCheckedToX[2 * node + 1]);
+	}
+
+	private static float notNaN(float value, float replacement) {
+		return Float.isNaN(value) ? replacement : value;
+	}
+
+	/**
+	 * Position of the first component reaching the given vertical position,
+	 * where {@link Component#nextUpperHorizontalComponent} stops, or the
+	 * number of slots.
+	 */
+	private int firstReaching(int node, int from, int to, float fromY) {
+		if (from >= slots.length || !(maxToY[node] >= fromY))
+			return slots.length;
+		if (to - from == 1)
+			return slots[from] != null ? from : slots.length;
+		int middle = (from + to) >>> 1;
+		int position = firstReaching(2 * node, from, middle, fromY);
+		return position < slots.length ? position : firstReaching(2 * node + 1, middle, to, fromY);
+	}
+
+	/**
+	 * Position of the last component before the end crossing the horizontal
+	 * extent of the margin, as {@link Component#nextUpperHorizontalComponent}.
+	 */
+	private int last(int node, int from, int to, int end, Component margin) {
+		if (from >= end || !(minFromX[node] <= margin.getToX() && maxToX[node] >= margin.getFromX()))
+			return -1;
+		if (to - from == 1)
+			return slots[from] != null && crossing(slots[from], margin) ? from : -1;
+		int middle = (from + to) >>> 1;
+		int position = last(2 * node + 1, middle, to, end, margin);
+		return position >= 0 ? position : last(2 * node, from, middle, end, margin);
+	}
+
+	/**
+	 * Position of the first component below the margin crossing its
+	 * horizontal extent, as {@link Component#nextLowerHorizontalComponent}.
+	 */
+	private int first(int node, int from, int to, Component margin) {
+		if (from >= slots.length || !(maxFromY[node] > margin.getToY() && minFromX[node] <= margin.getToX()
+				&& maxToX[node] >= margin.getFromX()))
+			return -1;
+		if (to - from == 1)
+			return slots[from] != null && slots[from].getFromY() > margin.getToY() && crossing(slots[from], margin)
+					? from : -1;
+		int middle = (from + to) >>> 1;
+		int position = first(2 * node, from, middle, margin);
+		return position >= 0 ? position : first(2 * node + 1, middle, to, margin);
+	}
+
+	private static boolean crossing(Component candidate, Component margin) {
+		return candidate.getFromX() <= margin.getToX() && candidate.getToX() >= margin.getFromX();
+	}
+
+	/**
+	 * Components a margin was compared with when it could not be joined.
+	 */
+	private class Neighbors {
+		private Component margin;
+		private Component upperEnd;
+		private Component upper;
+		private Component lower;
+
+		private Neighbors(Component margin) {
+			this.margin = margin;
+		}
+
+		/**
+		 * Whether the new margin, at the given position, is now the upper end,
+		 * upper or lower neighbour of the margin.
+		 */
+		private boolean affectedBy(Component newMargin, int position) {
+			if (position < position(upperEnd)) {
+				if (newMargin.getToY() >= margin.getFromY())
+					return true;
+				if (crossing(newMargin, margin) && (upper == null || position > position(upper)))
+					return true;
+			}
+			return position < position(lower) && newMargin.getFromY() > margin.getToY() && crossing(newMargin, margin);
+		}
+	}
+}
@@ -26,4 +26,17 @@ public class PDFPage {
 	public PDDocument getDoc() {
 		return doc;
 	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof PDFPage))
+			return false;
+		PDFPage other = (PDFPage) obj;
+		return doc == other.doc && index == other.index;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * System.identityHashCode(doc) + index;
+	}
 }
@@ -4,33 +4,47 @@ package edworld.pdfreader4humans;
 import static edworld.pdfreader4humans.util.TextUtil.removeDiacritics;
 import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
 import static java.lang.Math.abs;
+import static java.lang.Math.ceil;
 import static java.lang.Math.max;
 import static java.lang.Math.min;
 import static java.lang.Math.round;
-import static java.util.Collections.sort;
-import static java.util.regex.Matcher.quoteReplacement;
 
 import java.awt.Color;
 import java.awt.Font;
 import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.StringReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
-import org.apache.pdfbox.pdmodel.common.PDRectangle;
 
 import edworld.pdfreader4humans.util.PDFUtil;
+import edworld.pdfreader4humans.util.ReplacingWriter;
+import edworld.pdfreader4humans.util.Template;
+import edworld.pdfreader4humans.util.TemplateFields;
 
 public class PDFReader {
 	protected static final String HYPHEN = "-";
@@ -40,9 +54,30 @@ public class PDFReader {
 	protected URL url;
 	protected float tolerance;
 	protected List<List<Component>> firstLevel = new ArrayList<List<Component>>();
+	protected List<PageBox> pageBoxes = new ArrayList<PageBox>();
+	private static final TemplateFields NO_FIELDS = new TemplateFields() {
+		@Override
+		public boolean writeField(String fieldName, Writer writer) {
+			return false;
+		}
+	};
 	protected Map<String, String> templateMap = new HashMap<String, String>();
+	private Map<String, Template> parsedTemplateMap = new HashMap<String, Template>();
+	private Map<String, String> componentTemplateNames = new HashMap<String, String>();
+	private Map<String, Font> fonts = new ConcurrentHashMap<String, Font>();
+	// weak keys, as readers such as CompactPDFReader create the components
+	// again on each request
+	private Map<Component, Rectangle2D> inkBounds = Collections
+			.synchronizedMap(new WeakHashMap<Component, Rectangle2D>());
 	protected Component lastContainer;
 	protected TextComponent lastComponent;
+	protected String lastLine;
+	private final boolean pageToStringOverridden = overridden("pageToXML", int.class, List.class, int.class);
+	private final boolean outputToStringOverridden = overridden("output", Component.class, int.class);
+	private final boolean removeEmptyLinesOverridden = overridden("removeEmptyLines", String.class);
+	private final boolean stringTemplatesOverridden = overridden("template", String.class, int.class)
+			|| overridden("indent", String.class, int.class);
+	private Map<Class<?>, Boolean> componentOutputOverridden = new ConcurrentHashMap<Class<?>, Boolean>();
 
 	/**
 	 * Class responsible for reading PDF contents in the same order a human
@@ -85,57 +120,277 @@ public class PDFReader {
 	 */
 	public PDFReader(URL url, PDFComponentLocator componentLocator, BoxDetector boxDetector,
 			MarginDetector marginDetector, float tolerance) throws IOException {
+		this(url, componentLocator, boxDetector, marginDetector, tolerance, null);
+	}
+
+	/**
+	 * Class responsible for reading PDF contents in the same order a human
+	 * would read them, analysing the pages concurrently.
+	 * 
+	 * @param url
+	 *            the PDF's location
+	 * @param componentLocator
+	 *            an instance of a PDFComponentLocator subclass such as
+	 *            MainPDFComponentLocator
+	 * @param boxDetector
+	 *            an instance of a BoxDetector subclass such as MainBoxDetector
+	 * @param marginDetector
+	 *            an instance of a MarginDetector subclass such as
+	 *            MainMarginDetector
+	 * @param tolerance
+	 *            tolerance used to verify containment of components
+	 * @param executor
+	 *            executor used to analyse the pages in parallel, or null to
+	 *            analyse them one at a time on the caller's thread
+	 * @throws IOException
+	 */
+	public PDFReader(URL url, PDFComponentLocator componentLocator, BoxDetector boxDetector,
+			MarginDetector marginDetector, float tolerance, ExecutorService executor) throws IOException {
+		this(url, tolerance);
+		PDDocument doc = PDFUtil.load(url);
+		try {
+			if (executor == null)
+				readAllPages(doc, componentLocator, boxDetector, marginDetector);
+			else
+				readAllPages(doc, componentLocator, boxDetector, marginDetector, executor);
+		} finally {
+			doc.close();
+		}
+	}
+
+	/**
+	 * Constructor for subclasses that read the pages by themselves.
+	 * 
+	 * @param url
+	 *            the PDF's location
+	 * @param tolerance
+	 *            tolerance used to verify containment of components
+	 */
+	protected PDFReader(URL url, float tolerance) {
 		this.url = url;
 		this.tolerance = tolerance;
+	}
+
+	/**
+	 * Reads PDF contents page by page, in the same order a human would read
+	 * them, without keeping the pages already handled in memory.
+	 * 
+	 * @param url
+	 *            the PDF's location
+	 * @param componentLocator
+	 *            an instance of a PDFComponentLocator subclass such as
+	 *            MainPDFComponentLocator
+	 * @param boxDetector
+	 *            an instance of a BoxDetector subclass such as MainBoxDetector
+	 * @param marginDetector
+	 *            an instance of a MarginDetector subclass such as
+	 *            MainMarginDetector
+	 * @param tolerance
+	 *            tolerance used to verify containment of components
+	 * @param pageHandler
+	 *            handler that receives the first level components of each
+	 *            page as soon as the page is read
+	 * @throws IOException
+	 */
+	public static void readPages(URL url, PDFComponentLocator componentLocator, BoxDetector boxDetector,
+			MarginDetector marginDetector, float tolerance, PageHandler pageHandler) throws IOException {
+		PDFReader reader = new PDFReader(url, tolerance);
 		PDDocument doc = PDFUtil.load(url);
 		try {
-			readAllPages(doc, componentLocator, boxDetector, marginDetector);
+			int index = 0;
+			for (PDPage page : doc.getPages()) {
+				pageHandler.handlePage(index + 1,
+						reader.readPage(new PDFPage(index, page, doc), componentLocator, boxDetector, marginDetector));
+				index++;
+			}
 		} finally {
 			doc.close();
 		}
 	}
 
+	public int getNumberOfPages() {
+		return firstLevel.size();
+	}
+
 	public List<Component> getFirstLevelComponents(int pageNumber) {
 		return firstLevel.get(pageNumber - 1);
 	}
 
+	/**
+	 * First level components of a page used to write or draw it, which a
+	 * subclass may create only for that use. By default they are those of
+	 * {@link #getFirstLevelComponents(int)}.
+	 */
+	protected List<Component> getComponentsToWrite(int pageNumber) {
+		return getFirstLevelComponents(pageNumber);
+	}
+
+	/**
+	 * Compact copy of the components of a page. {@link CompactPDFReader} keeps
+	 * its pages in this form until their components are requested.
+	 */
+	public PageGeometry getPageGeometry(int pageNumber) {
+		return new PageGeometry(getFirstLevelComponents(pageNumber));
+	}
+
 	public String toXML() {
-		String output = template("pdfreader4humans.xml", 0);
-		String content = "";
-		for (int pageIndex = 0; pageIndex < firstLevel.size(); pageIndex++)
-			content += pageToXML(pageIndex + 1, firstLevel.get(pageIndex), 1);
-		return removeEmptyLines(output.replaceAll("\\$\\{content\\}", quoteReplacement(content)));
+		StringWriter writer = new StringWriter();
+		try {
+			toXML(writer);
+		} catch (IOException e) {
+			throw new IllegalArgumentException(e);
+		}
+		return writer.toString();
+	}
+
+	public void toXML(OutputStream output) throws IOException {
+		Writer writer = new BufferedWriter(new OutputStreamWriter(output, UTF_8));
+		toXML(writer);
+		writer.flush();
+	}
+
+	public void toXML(Writer writer) throws IOException {
+		if (removeEmptyLinesOverridden) {
+			StringWriter output = new StringWriter();
+			documentToXML(output);
+			writer.write(removeEmptyLines(output.toString()));
+			writer.flush();
+			return;
+		}
+		ReplacingWriter output = new ReplacingWriter(writer, LINE_BREAK + LINE_BREAK, LINE_BREAK);
+		documentToXML(output);
+		output.finish();
+	}
+
+	private void documentToXML(final Writer output) throws IOException {
+		render("pdfreader4humans.xml", 0, new TemplateFields() {
+			@Override
+			public boolean writeField(String fieldName, Writer writer) throws IOException {
+				if (!fieldName.equals(Template.CONTENT))
+					return false;
+				for (int pageNumber = 1; pageNumber <= getNumberOfPages(); pageNumber++)
+					pageToXML(pageNumber, getComponentsToWrite(pageNumber), 1, output);
+				return true;
+			}
+		}, output);
+	}
+
+	/**
+	 * @deprecated empty lines are removed while {@link #toXML(Writer)} writes
+	 *             the document; an override of this method is still applied
+	 *             to the whole document
+	 */
+	@Deprecated
+	protected String removeEmptyLines(String text) {
+		StringWriter writer = new StringWriter();
+		ReplacingWriter output = new ReplacingWriter(writer, LINE_BREAK + LINE_BREAK, LINE_BREAK);
+		try {
+			output.write(text);
+			output.finish();
+		} catch (IOException e) {
+			throw new IllegalArgumentException(e);
+		}
+		return writer.toString();
+	}
+
+	/**
+	 * Writes the components of every page in the binary format read by
+	 * {@link BinaryComponentReader}, without closing the output.
+	 */
+	public void toBinary(OutputStream output) throws IOException {
+		BinaryComponentWriter writer = new BinaryComponentWriter(output);
+		for (int pageNumber = 1; pageNumber <= getNumberOfPages(); pageNumber++)
+			writer.writePage(getComponentsToWrite(pageNumber));
+		writer.finish();
 	}
 
 	public List<String> toTextLines() {
-		List<String> lines = new ArrayList<String>();
-		for (int pageIndex = 0; pageIndex < firstLevel.size(); pageIndex++)
-			lines.addAll(pageToTextLines(pageIndex + 1, firstLevel.get(pageIndex)));
+		final List<String> lines = new ArrayList<String>();
+		try {
+			toTextLines(new LineHandler() {
+				@Override
+				public void handleLine(String line) {
+					lines.add(line);
+				}
+			});
+		} catch (IOException e) {
+			throw new IllegalArgumentException(e);
+		}
 		return lines;
 	}
 
+	public void toText(OutputStream output) throws IOException {
+		Writer writer = new BufferedWriter(new OutputStreamWriter(output, UTF_8));
+		toText(writer);
+		writer.flush();
+	}
+
+	public void toText(final Writer writer) throws IOException {
+		toTextLines(new LineHandler() {
+			@Override
+			public void handleLine(String line) throws IOException {
+				writer.write(line);
+				writer.write(LINE_BREAK);
+			}
+		});
+	}
+
+	/**
+	 * Hands each text line to the given handler as soon as the line is
+	 * complete.
+	 * 
+	 * @param lineHandler
+	 *            handler that receives the lines in reading order
+	 * @throws IOException
+	 */
+	public void toTextLines(LineHandler lineHandler) throws IOException {
+		for (int pageNumber = 1; pageNumber <= getNumberOfPages(); pageNumber++)
+			pageToTextLines(pageNumber, getComponentsToWrite(pageNumber), lineHandler);
+	}
+
 	protected List<String> pageToTextLines(int pageNumber, List<Component> pageFirstLevelComponents) {
-		List<String> lines = new ArrayList<String>();
+		final List<String> lines = new ArrayList<String>();
+		try {
+			pageToTextLines(pageNumber, pageFirstLevelComponents, new LineHandler() {
+				@Override
+				public void handleLine(String line) {
+					lines.add(line);
+				}
+			});
+		} catch (IOException e) {
+			throw new IllegalArgumentException(e);
+		}
+		return lines;
+	}
+
+	protected void pageToTextLines(int pageNumber, List<Component> pageFirstLevelComponents, LineHandler lineHandler)
+			throws IOException {
 		lastContainer = null;
 		lastComponent = null;
+		lastLine = null;
 		for (Component component : pageFirstLevelComponents)
-			addToTextLines(component, null, lines);
-		return lines;
+			addToTextLines(component, null, lineHandler);
+		if (lastLine != null)
+			lineHandler.handleLine(lastLine);
+		lastLine = null;
 	}
 
-	private void addToTextLines(Component component, Component container, List<String> lines) {
+	private void addToTextLines(Component component, Component container, LineHandler lineHandler)
+			throws IOException {
 		if (component instanceof TextComponent)
-			addText((TextComponent) component, container, lines);
+			addText((TextComponent) component, container, lineHandler);
 		for (Component child : component.getChildren())
-			addToTextLines(child, component, lines);
+			addToTextLines(child, component, lineHandler);
 	}
 
-	private void addText(TextComponent component, Component container, List<String> lines) {
-		if (container == lastContainer && consecutiveText(lastComponent, component, container)) {
-			String lastText = lines.get(lines.size() - 1);
-			lines.set(lines.size() - 1, joinConsecutiveText(lastText, component.getText()));
-		} else
-			lines.add(component.getText());
+	private void addText(TextComponent component, Component container, LineHandler lineHandler) throws IOException {
+		if (container == lastContainer && consecutiveText(lastComponent, component, container))
+			lastLine = joinConsecutiveText(lastLine, component.getText());
+		else {
+			if (lastLine != null)
+				lineHandler.handleLine(lastLine);
+			lastLine = component.getText();
+		}
 		lastContainer = container;
 		lastComponent = component;
 	}
@@ -182,60 +437,310 @@ public class PDFReader {
 		return text1 + SPACE + text2;
 	}
 
-	protected String removeEmptyLines(String text) {
-		return text.replaceAll(LINE_BREAK + LINE_BREAK, LINE_BREAK);
+	protected void pageToXML(int pageNumber, List<Component> pageFirstLevelComponents, int indentLevel,
+			Writer writer) throws IOException {
+		if (pageToStringOverridden)
+			writer.write(pageToXML(pageNumber, pageFirstLevelComponents, indentLevel));
+		else
+			writePage(pageNumber, pageFirstLevelComponents, indentLevel, writer);
 	}
 
+	/**
+	 * @deprecated override {@link #pageToXML(int, List, int, Writer)} instead;
+	 *             an override of this method is still used by
+	 *             {@link #toXML(Writer)}
+	 */
+	@Deprecated
 	protected String pageToXML(int pageNumber, List<Component> pageFirstLevelComponents, int indentLevel) {
-		String pageTemplate = template("pdfreader4humans-page.xml", indentLevel);
-		String content = "";
-		for (Component component : pageFirstLevelComponents)
-			content += output(component, indentLevel + 1);
-		return pageTemplate.replaceAll("\\$\\{pageNumber\\}", String.valueOf(pageNumber)).replaceAll("\\$\\{content\\}",
-				quoteReplacement(content));
+		StringWriter writer = new StringWriter();
+		try {
+			writePage(pageNumber, pageFirstLevelComponents, indentLevel, writer);
+		} catch (IOException e) {
+			throw new IllegalArgumentException(e);
+		}
+		return writer.toString();
+	}
+
+	private void writePage(final int pageNumber, final List<Component> pageFirstLevelComponents,
+			final int indentLevel, Writer writer) throws IOException {
+		render("pdfreader4humans-page.xml", indentLevel, new TemplateFields() {
+			@Override
+			public boolean writeField(String fieldName, Writer writer) throws IOException {
+				if (fieldName.equals("pageNumber"))
+					writer.write(String.valueOf(pageNumber));
+				else if (fieldName.equals(Template.CONTENT))
+					for (Component component : pageFirstLevelComponents)
+						output(component, indentLevel + 1, writer);
+				else
+					return false;
+				return true;
+			}
+		}, writer);
 	}
 
+	protected void output(Component component, int indentLevel, Writer writer) throws IOException {
+		if (outputToStringOverridden)
+			writer.write(output(component, indentLevel));
+		else
+			writeComponent(component, indentLevel, writer);
+	}
+
+	/**
+	 * @deprecated override {@link #output(Component, int, Writer)} instead; an
+	 *             override of this method is still used by
+	 *             {@link #toXML(Writer)}
+	 */
+	@Deprecated
 	protected String output(Component component, int indentLevel) {
-		String componentTemplate = template("pdfreader4humans-" + component.getType() + ".xml", indentLevel);
-		String content = "";
+		StringWriter writer = new StringWriter();
+		try {
+			writeComponent(component, indentLevel, writer);
+		} catch (IOException e) {
+			throw new IllegalArgumentException(e);
+		}
+		return writer.toString();
+	}
+
+	private void writeComponent(final Component component, final int indentLevel, Writer writer)
+			throws IOException {
+		String templateFileName = componentTemplateName(component.getType());
+		if (outputOverridden(component)) {
+			writeComponentOutput(component, indentLevel, templateFileName, writer);
+			return;
+		}
+		render(templateFileName, indentLevel, new TemplateFields() {
+			@Override
+			public boolean writeField(String fieldName, Writer writer) throws IOException {
+				if (!fieldName.equals(Template.CONTENT))
+					return component.writeField(fieldName, writer);
+				for (Component child : component.getChildren())
+					output(child, indentLevel + 1, writer);
+				return true;
+			}
+		}, writer);
+	}
+
+	/**
+	 * Writes a component whose class overrides the deprecated
+	 * {@link Component#output(String)}, which fills the whole template.
+	 */
+	@SuppressWarnings("deprecation")
+	private void writeComponentOutput(Component component, int indentLevel, String templateFileName, Writer writer)
+			throws IOException {
+		StringWriter template = new StringWriter();
+		render(templateFileName, indentLevel, NO_FIELDS, template);
+		String output = component.output(template.toString());
+		String content = "${" + Template.CONTENT + "}";
+		int contentIndex = output.indexOf(content);
+		if (contentIndex < 0) {
+			writer.write(output);
+			return;
+		}
+		writer.write(output, 0, contentIndex);
 		for (Component child : component.getChildren())
-			content += output(child, indentLevel + 1);
-		return component.output(componentTemplate).replaceAll("\\$\\{content\\}", quoteReplacement(content));
+			output(child, indentLevel + 1, writer);
+		writer.write(output.substring(contentIndex + content.length()));
+	}
+
+	private boolean outputOverridden(Component component) {
+		Boolean overridden = componentOutputOverridden.get(component.getClass());
+		if (overridden == null) {
+			try {
+				Class<?> type = component.getClass().getMethod("output", String.class).getDeclaringClass();
+				overridden = type != Component.class && type != TextComponent.class && type != GridComponent.class
+						&& type != BoxComponent.class;
+			} catch (NoSuchMethodException e) {
+				throw new IllegalStateException(e);
+			}
+			componentOutputOverridden.put(component.getClass(), overridden);
+		}
+		return overridden;
+	}
+
+	private void render(String templateFileName, int indentLevel, TemplateFields fields, Writer writer)
+			throws IOException {
+		if (stringTemplatesOverridden)
+			new Template(template(templateFileName, indentLevel)).render(0, fields, writer);
+		else
+			template(templateFileName).render(indentLevel, fields, writer);
 	}
 
 	public BufferedImage createPageImage(int pageNumber, int scaling, Color inkColor, Color backgroundColor,
 			boolean showStructure) throws IOException {
-		Map<String, Font> fonts = new HashMap<String, Font>();
-		PDRectangle cropBox = getPageCropBox(pageNumber);
+		PageBox cropBox = getPageBox(pageNumber);
 		BufferedImage image = new BufferedImage(round(cropBox.getWidth() * scaling),
 				round(cropBox.getHeight() * scaling), TYPE_INT_ARGB);
+		drawPage(pageNumber, image, scaling, null, inkColor, backgroundColor, showStructure);
+		return image;
+	}
+
+	/**
+	 * Renders only a region of the page, at any scale. Components whose
+	 * bounds fall outside the region are skipped together with their
+	 * children, so zoomed crops and thumbnails are cheaper than rendering the
+	 * whole page.
+	 * 
+	 * @param scale
+	 *            image pixels per page unit, such as 0.25 for a thumbnail
+	 * @param region
+	 *            the rectangle to render, in the same coordinates as the
+	 *            components (origin at the top left corner of the page), or
+	 *            null for the whole page
+	 * @throws IOException
+	 */
+	public BufferedImage createPageImage(int pageNumber, float scale, Rectangle2D region, Color inkColor,
+			Color backgroundColor, boolean showStructure) throws IOException {
+		if (region == null) {
+			PageBox cropBox = getPageBox(pageNumber);
+			region = new Rectangle2D.Float(0, 0, cropBox.getWidth(), cropBox.getHeight());
+		}
+		BufferedImage image = new BufferedImage(max(1, (int) ceil(region.getWidth() * scale)),
+				max(1, (int) ceil(region.getHeight() * scale)), TYPE_INT_ARGB);
+		drawPage(pageNumber, image, scale, region, inkColor, backgroundColor, showStructure);
+		return image;
+	}
+
+	/**
+	 * Renders the image of every page and hands it to the given handler as
+	 * soon as it is drawn. The images are taken from a pool, so only as many
+	 * of them as the pages being drawn at the same time are kept in memory.
+	 * 
+	 * @param executor
+	 *            executor used to draw the pages in parallel, or null to draw
+	 *            them one at a time on the caller's thread
+	 * @param imageHandler
+	 *            handler of the images, such as a {@link PNGPageImageWriter}
+	 * @throws IOException
+	 */
+	public void createPageImages(final int scaling, final Color inkColor, final Color backgroundColor,
+			final boolean showStructure, ExecutorService executor, final PageImageHandler imageHandler)
+			throws IOException {
+		final ImagePool pool = new ImagePool();
+		// the page boxes are recorded before the pages are drawn concurrently
+		if (getNumberOfPages() > 0)
+			getPageBox(1);
+		if (executor == null) {
+			for (int pageNumber = 1; pageNumber <= getNumberOfPages(); pageNumber++)
+				createPageImage(pageNumber, scaling, inkColor, backgroundColor, showStructure, pool, imageHandler);
+			return;
+		}
+		List<Future<Void>> results = new ArrayList<Future<Void>>();
+		try {
+			for (int pageNumber = 1; pageNumber <= getNumberOfPages(); pageNumber++) {
+				final int page = pageNumber;
+				results.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws IOException {
+						createPageImage(page, scaling, inkColor, backgroundColor, showStructure, pool, imageHandler);
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> result : results)
+				pageResult(result);
+		} finally {
+			for (Future<Void> result : results)
+				result.cancel(true);
+		}
+	}
+
+	private void createPageImage(int pageNumber, int scaling, Color inkColor, Color backgroundColor,
+			boolean showStructure, ImagePool pool, PageImageHandler imageHandler) throws IOException {
+		PageBox cropBox = getPageBox(pageNumber);
+		int width = round(cropBox.getWidth() * scaling);
+		int height = round(cropBox.getHeight() * scaling);
+		BufferedImage pooledImage = pool.borrow(width, height);
+		try {
+			BufferedImage image = pooledImage.getWidth() == width && pooledImage.getHeight() == height ? pooledImage
+					: pooledImage.getSubimage(0, 0, width, height);
+			drawPage(pageNumber, image, scaling, null, inkColor, backgroundColor, showStructure);
+			imageHandler.handlePageImage(pageNumber, image);
+		} finally {
+			pool.release(pooledImage);
+		}
+	}
+
+	private void drawPage(int pageNumber, BufferedImage image, float scale, Rectangle2D region, Color inkColor,
+			Color backgroundColor, boolean showStructure) {
 		Graphics2D graphics = image.createGraphics();
 		graphics.setBackground(backgroundColor);
 		graphics.clearRect(0, 0, image.getWidth(), image.getHeight());
 		graphics.setColor(backgroundColor);
 		graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
 		graphics.setColor(inkColor);
-		graphics.scale(scaling, scaling);
-		for (Component component : getFirstLevelComponents(pageNumber))
-			draw(component, graphics, inkColor, backgroundColor, showStructure, fonts);
+		graphics.scale(scale, scale);
+		if (region != null) {
+			graphics.translate(-region.getX(), -region.getY());
+			graphics.clip(region);
+		}
+		for (Component component : getComponentsToWrite(pageNumber))
+			draw(component, graphics, region, inkColor, backgroundColor, showStructure);
 		graphics.dispose();
-		return image;
 	}
 
 	protected void readAllPages(PDDocument doc, PDFComponentLocator componentLocator, BoxDetector boxDetector,
 			MarginDetector marginDetector) throws IOException {
 		int index = 0;
 		for (PDPage page : doc.getPages()) {
+			pageBoxes.add(new PageBox(page));
 			firstLevel.add(readPage(new PDFPage(index, page, doc), componentLocator, boxDetector, marginDetector));
 			index++;
 		}
 	}
 
+	protected void readAllPages(PDDocument doc, final PDFComponentLocator componentLocator,
+			final BoxDetector boxDetector, final MarginDetector marginDetector, ExecutorService executor)
+			throws IOException {
+		List<PDFPage> pages = new ArrayList<PDFPage>();
+		int index = 0;
+		for (PDPage page : doc.getPages()) {
+			pageBoxes.add(new PageBox(page));
+			pages.add(new PDFPage(index, page, doc));
+			index++;
+		}
+		List<Future<List<Component>>> results = new ArrayList<Future<List<Component>>>();
+		try {
+			for (final PDFPage page : pages)
+				results.add(executor.submit(new Callable<List<Component>>() {
+					@Override
+					public List<Component> call() throws IOException {
+						return readPage(page, componentLocator, boxDetector, marginDetector);
+					}
+				}));
+			for (Future<List<Component>> result : results)
+				firstLevel.add(pageResult(result));
+		} finally {
+			for (Future<List<Component>> result : results)
+				result.cancel(true);
+		}
+	}
+
+	private <T> T pageResult(Future<T> result) throws IOException {
+		try {
+			return result.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException(e.getMessage());
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new IOException(e.getCause());
+		}
+	}
+
 	protected List<Component> readPage(PDFPage page, PDFComponentLocator componentLocator, BoxDetector boxDetector,
 			MarginDetector marginDetector) throws IOException {
 		List<Component> firstLevelComponents = new ArrayList<Component>();
-		List<GridComponent> gridComponents = componentLocator.locateGridComponents(page);
-		List<TextComponent> textComponents = componentLocator.locateTextComponents(page);
+		List<GridComponent> gridComponents;
+		List<TextComponent> textComponents;
+		// PDFBox documents are not thread-safe, so only the extraction is
+		// serialized when pages are analysed in parallel
+		synchronized (componentLocator) {
+			gridComponents = componentLocator.locateGridComponents(page);
+			textComponents = componentLocator.locateTextComponents(page);
+		}
 		List<BoxComponent> boxes = boxDetector.detectBoxes(gridComponents);
 		List<Component> containers = new ArrayList<Component>();
 		containers.addAll(gridComponents);
@@ -255,36 +760,7 @@ public class PDFReader {
 	}
 
 	private void expandMargins(List<Component> components) {
-		for (Component margin : components)
-			if (margin instanceof MarginComponent)
-				if (expandedTowards(margin.nextUpperHorizontalComponent(margin.getToX(), margin.getFromX(), components),
-						margin, components)
-						|| expandedTowards(
-								margin.nextLowerHorizontalComponent(margin.getToX(), margin.getFromX(), components),
-								margin, components)) {
-					expandMargins(components);
-					break;
-				}
-	}
-
-	private boolean expandedTowards(Component nearComponent, Component margin, List<Component> components) {
-		if (nearComponent != null && abs(nearComponent.getFromX() - margin.getFromX()) < 1
-				&& abs(nearComponent.getToX() - margin.getToX()) < 1) {
-			components.remove(nearComponent);
-			components.remove(margin);
-			float fromX = min(margin.getFromX(), nearComponent.getFromX());
-			float fromY = min(margin.getFromY(), nearComponent.getFromY());
-			float toX = max(margin.getToX(), nearComponent.getToX());
-			float toY = max(margin.getToY(), nearComponent.getToY());
-			MarginComponent newMargin = new MarginComponent(fromX, fromY, toX, toY);
-			newMargin.getChildren().addAll(margin.getChildren());
-			newMargin.addChild(nearComponent);
-			sort(newMargin.getChildren());
-			components.add(newMargin);
-			sort(components);
-			return true;
-		}
-		return false;
+		new MarginExpansion(components).expand();
 	}
 
 	protected void sortRecursively(List<Component> components) {
@@ -297,21 +773,55 @@ public class PDFReader {
 	protected List<? extends Component> group(List<TextComponent> textComponents, List<Component> layoutComponents) {
 		List<Component> list = new ArrayList<Component>();
 		list.addAll(layoutComponents);
+		ContainerIndex containerIndex = new ContainerIndex(layoutComponents, tolerance);
 		for (Component component : textComponents)
-			if (findContainer(component, layoutComponents) == null)
+			if (containerIndex.findContainer(component) == null)
 				list.add(component);
 		return list;
 	}
 
+	/**
+	 * Groups components connected by intersections, found by an
+	 * {@link IntersectionSweep}. Groups are numbered in the order of their
+	 * first component in the list.
+	 */
 	protected List<Component> groupConnectedComponents(List<Component> components) {
-		Map<Component, Integer> groupMap = new HashMap<Component, Integer>();
-		int lastGroupIndex = buildGroupMap(components, groupMap);
-		List<Component> groups = new ArrayList<Component>(lastGroupIndex);
+		IntersectionSweep sweep = new IntersectionSweep(components);
+		int[] groupIndexes = new int[components.size()];
+		int lastGroupIndex = 0;
+		for (int index = 0; index < groupIndexes.length; index++)
+			if (sweep.isIntersecting(index) && groupIndexes[sweep.findRoot(index)] == 0)
+				groupIndexes[sweep.findRoot(index)] = ++lastGroupIndex;
+		float[] fromX = new float[lastGroupIndex + 1];
+		float[] fromY = new float[lastGroupIndex + 1];
+		float[] toX = new float[lastGroupIndex + 1];
+		float[] toY = new float[lastGroupIndex + 1];
+		Arrays.fill(fromX, Float.POSITIVE_INFINITY);
+		Arrays.fill(fromY, Float.POSITIVE_INFINITY);
+		Arrays.fill(toX, Float.NEGATIVE_INFINITY);
+		Arrays.fill(toY, Float.NEGATIVE_INFINITY);
+		for (int index = 0; index < groupIndexes.length; index++) {
+			int groupIndex = groupIndexes[sweep.findRoot(index)];
+			Component component = components.get(index);
+			fromX[groupIndex] = min(component.getFromX(), fromX[groupIndex]);
+			fromY[groupIndex] = min(component.getFromY(), fromY[groupIndex]);
+			toX[groupIndex] = max(component.getToX(), toX[groupIndex]);
+			toY[groupIndex] = max(component.getToY(), toY[groupIndex]);
+		}
+		List<Component> groups = new ArrayList<Component>();
 		for (int groupIndex = 1; groupIndex <= lastGroupIndex; groupIndex++)
-			createGroup(groupIndex, groupMap, groups);
+			if (fromX[groupIndex] != Float.POSITIVE_INFINITY || fromY[groupIndex] != Float.POSITIVE_INFINITY
+					|| toX[groupIndex] != Float.NEGATIVE_INFINITY || toY[groupIndex] != Float.NEGATIVE_INFINITY)
+				groups.add(new GroupComponent(fromX[groupIndex], fromY[groupIndex], toX[groupIndex], toY[groupIndex]));
 		return groups;
 	}
 
+	/**
+	 * @deprecated no longer called by {@link #groupConnectedComponents(List)},
+	 *             which computes the bounds of all groups in a single pass;
+	 *             override that method instead
+	 */
+	@Deprecated
 	protected void createGroup(int groupIndex, Map<Component, Integer> groupMap, List<Component> groups) {
 		float fromX = Float.POSITIVE_INFINITY;
 		float fromY = Float.POSITIVE_INFINITY;
@@ -329,36 +839,12 @@ public class PDFReader {
 			groups.add(new GroupComponent(fromX, fromY, toX, toY));
 	}
 
-	private int buildGroupMap(List<Component> components, Map<Component, Integer> groupMap) {
-		int lastGroupIndex = 0;
-		for (int i = 0; i < components.size(); i++)
-			for (int j = i + 1; j < components.size(); j++) {
-				Component component1 = components.get(i);
-				Component component2 = components.get(j);
-				if (component1.intersects(component2))
-					lastGroupIndex = mapToSameGroupIndex(component1, component2, lastGroupIndex, groupMap);
-			}
-		return lastGroupIndex;
-	}
-
-	private int mapToSameGroupIndex(Component component1, Component component2, int lastGroupIndex,
-			Map<Component, Integer> groupMap) {
-		Integer groupIndex1 = groupMap.get(component1);
-		Integer groupIndex2 = groupMap.get(component2);
-		if (groupIndex1 == null && groupIndex2 == null) {
-			lastGroupIndex++;
-			groupMap.put(component1, lastGroupIndex);
-			groupMap.put(component2, lastGroupIndex);
-		} else if (groupIndex1 != null && groupIndex2 == null) {
-			groupMap.put(component2, groupIndex1);
-		} else if (groupIndex1 == null && groupIndex2 != null) {
-			groupMap.put(component1, groupIndex2);
-		} else if (groupIndex1 != groupIndex2) {
-			joinGroups(groupIndex1, groupIndex2, groupMap);
-		}
-		return lastGroupIndex;
-	}
-
+	/**
+	 * @deprecated no longer called by {@link #groupConnectedComponents(List)},
+	 *             which joins groups in a union-find structure; override that
+	 *             method instead
+	 */
+	@Deprecated
 	protected void joinGroups(Integer groupIndex1, Integer groupIndex2, Map<Component, Integer> groupMap) {
 		for (Component component : groupMap.keySet())
 			if (groupMap.get(component) == groupIndex2)
@@ -367,8 +853,9 @@ public class PDFReader {
 
 	protected void addComponents(List<? extends Component> components, List<Component> targetList,
 			List<? extends Component> containers) {
+		ContainerIndex containerIndex = new ContainerIndex(containers, tolerance);
 		for (Component component : components) {
-			Component container = findContainer(component, containers);
+			Component container = containerIndex.findContainer(component);
 			if (container != null)
 				container.addChild(component);
 			else
@@ -387,16 +874,61 @@ public class PDFReader {
 		return container;
 	}
 
+	private String componentTemplateName(String componentType) {
+		String templateFileName = componentTemplateNames.get(componentType);
+		if (templateFileName == null) {
+			templateFileName = "pdfreader4humans-" + componentType + ".xml";
+			componentTemplateNames.put(componentType, templateFileName);
+		}
+		return templateFileName;
+	}
+
+	protected Template template(String templateFileName) {
+		String text = templateText(templateFileName);
+		Template template = parsedTemplateMap.get(templateFileName);
+		// parsed again when a subclass puts another text into templateMap
+		if (template == null || template.getText() != text) {
+			template = new Template(text);
+			parsedTemplateMap.put(templateFileName, template);
+		}
+		return template;
+	}
+
+	/**
+	 * @deprecated templates are parsed once by {@link #template(String)} and
+	 *             indented while rendered; an override of this method is still
+	 *             used by {@link #toXML(Writer)}
+	 */
+	@Deprecated
 	protected String template(String templateFileName, int indentLevel) {
-		String template = templateMap.get(templateFileName);
-		if (template != null)
-			return indent(template, indentLevel);
+		return indent(templateText(templateFileName), indentLevel);
+	}
+
+	/**
+	 * @deprecated templates are indented while rendered; an override of this
+	 *             method is still used by {@link #toXML(Writer)}
+	 */
+	@Deprecated
+	protected String indent(String output, int indentLevel) {
+		StringWriter writer = new StringWriter();
+		try {
+			new Template(output).render(indentLevel, NO_FIELDS, writer);
+		} catch (IOException e) {
+			throw new IllegalArgumentException(e);
+		}
+		return writer.toString();
+	}
+
+	private String templateText(String templateFileName) {
+		String text = templateMap.get(templateFileName);
+		if (text != null)
+			return text;
 		InputStream input = getClass().getResourceAsStream("/templates/" + templateFileName);
 		try {
 			try {
-				template = IOUtils.toString(input, UTF_8);
-				templateMap.put(templateFileName, template);
-				return indent(template, indentLevel);
+				text = IOUtils.toString(input, UTF_8);
+				templateMap.put(templateFileName, text);
+				return text;
 			} finally {
 				input.close();
 			}
@@ -405,26 +937,27 @@ public class PDFReader {
 		}
 	}
 
-	protected String indent(String output, int indentLevel) {
-		try {
-			char[] tabs = new char[indentLevel];
-			Arrays.fill(tabs, '\t');
-			StringBuilder buffer = new StringBuilder();
-			for (String line : IOUtils.readLines(new StringReader(output)))
-				if (line.equals("${content}"))
-					buffer.append(line);
-				else
-					buffer.append(tabs).append(line).append(LINE_BREAK);
-			return buffer.toString();
-		} catch (IOException e) {
-			throw new IllegalArgumentException(e);
-		}
+	/**
+	 * @return whether a subclass declares the given method, so the hooks kept
+	 *         for earlier subclasses are still called
+	 */
+	private boolean overridden(String methodName, Class<?>... parameterTypes) {
+		for (Class<?> type = getClass(); type != PDFReader.class; type = type.getSuperclass())
+			try {
+				type.getDeclaredMethod(methodName, parameterTypes);
+				return true;
+			} catch (NoSuchMethodException e) {
+				// not declared at this level
+			}
+		return false;
 	}
 
-	private void draw(Component component, Graphics2D graphics, Color inkColor, Color backgroundColor,
-			boolean showStructure, Map<String, Font> fonts) {
+	private void draw(Component component, Graphics2D graphics, Rectangle2D region, Color inkColor,
+			Color backgroundColor, boolean showStructure) {
+		if (region != null && !region.intersects(inkBounds(component)))
+			return;
 		for (Component child : component.getChildren())
-			draw(child, graphics, inkColor, backgroundColor, showStructure, fonts);
+			draw(child, graphics, region, inkColor, backgroundColor, showStructure);
 		if (component instanceof BoxComponent && showStructure) {
 			graphics.setColor(boxColor(backgroundColor));
 			graphics.drawRect((int) component.getFromX(), (int) component.getFromY(), (int) component.getWidth(),
@@ -447,11 +980,40 @@ public class PDFReader {
 			graphics.drawRect(round(component.getFromX()), round(component.getFromY()), round(component.getWidth()),
 					round(component.getHeight()));
 		else if (component instanceof TextComponent) {
-			graphics.setFont(font((TextComponent) component, fonts));
+			graphics.setFont(font((TextComponent) component));
 			graphics.drawString(((TextComponent) component).getText(), component.getFromX(), component.getToY());
 		}
 	}
 
+	/**
+	 * Bounds of everything drawn for the component and its children, which
+	 * may spill over the component's own bounds because of stroke widths and
+	 * the glyphs of the replacement fonts.
+	 */
+	private Rectangle2D inkBounds(Component component) {
+		Rectangle2D bounds = inkBounds.get(component);
+		if (bounds != null)
+			return bounds;
+		float margin = tolerance + 1;
+		float toX = component.getToX();
+		float fromY = component.getFromY();
+		float toY = component.getToY();
+		if (component instanceof TextComponent) {
+			TextComponent text = (TextComponent) component;
+			toX = max(toX, component.getFromX() + text.getText().length() * text.getFontSize());
+			fromY = min(fromY, toY - text.getFontSize());
+			toY += text.getFontSize();
+		}
+		bounds = new Rectangle2D.Float(component.getFromX() - margin, fromY - margin,
+				toX - component.getFromX() + 2 * margin, toY - fromY + 2 * margin);
+		if (component.getChildren().isEmpty())
+			return bounds;
+		for (Component child : component.getChildren())
+			bounds.add(inkBounds(child));
+		inkBounds.put(component, bounds);
+		return bounds;
+	}
+
 	private Color boxColor(Color backgroundColor) {
 		return new Color(Color.GRAY.getRGB() ^ backgroundColor.getRGB());
 	}
@@ -464,7 +1026,7 @@ public class PDFReader {
 		return new Color(Color.YELLOW.getRGB() ^ inkColor.getRGB());
 	}
 
-	private Font font(TextComponent component, Map<String, Font> fonts) {
+	private Font font(TextComponent component) {
 		String key = component.getFontName() + ":" + component.getFontSize();
 		Font font = fonts.get(key);
 		if (font == null) {
@@ -477,10 +1039,25 @@ public class PDFReader {
 		return font;
 	}
 
-	private PDRectangle getPageCropBox(int pageIndex) throws IOException {
+	/**
+	 * Crop box and rotation of a page, as recorded when the page was read.
+	 */
+	public PageBox getPageBox(int pageNumber) throws IOException {
+		if (pageBoxes.size() < getNumberOfPages())
+			readPageBoxes();
+		return pageBoxes.get(pageNumber - 1);
+	}
+
+	/**
+	 * Loads the PDF once for the page boxes of readers whose pages were read
+	 * without recording them.
+	 */
+	private void readPageBoxes() throws IOException {
 		PDDocument doc = PDFUtil.load(url);
 		try {
-			return doc.getPages().get(pageIndex - 1).getCropBox();
+			pageBoxes.clear();
+			for (PDPage page : doc.getPages())
+				pageBoxes.add(new PageBox(page));
 		} finally {
 			doc.close();
 		}
@@ -0,0 +1,40 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Writes each page image to a PNG file named after its page number.
+ */
+public class PNGPageImageWriter implements PageImageHandler {
+	private File directory;
+	private String prefix;
+
+	/**
+	 * @param directory
+	 *            directory where the images are written, created if needed
+	 * @param prefix
+	 *            start of the file names, followed by the page number and
+	 *            ".png"
+	 */
+	public PNGPageImageWriter(File directory, String prefix) {
+		this.directory = directory;
+		this.prefix = prefix;
+	}
+
+	public File getFile(int pageNumber) {
+		return new File(directory, prefix + pageNumber + ".png");
+	}
+
+	@Override
+	public void handlePageImage(int pageNumber, BufferedImage image) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory())
+			throw new IOException("Unable to create the directory " + directory);
+		if (!ImageIO.write(image, "png", getFile(pageNumber)))
+			throw new IOException("No PNG writer available");
+	}
+}
@@ -0,0 +1,56 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans;
+
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+
+/**
+ * Crop box and rotation of a page, recorded while the page is read so that
+ * images of it can be created without loading the PDF again.
+ */
+public class PageBox {
+	private float lowerLeftX;
+	private float lowerLeftY;
+	private float width;
+	private float height;
+	private int rotation;
+
+	public PageBox(float lowerLeftX, float lowerLeftY, float width, float height, int rotation) {
+		this.lowerLeftX = lowerLeftX;
+		this.lowerLeftY = lowerLeftY;
+		this.width = width;
+		this.height = height;
+		this.rotation = rotation;
+	}
+
+	public PageBox(PDPage page) {
+		this(page.getCropBox(), page.getRotation());
+	}
+
+	private PageBox(PDRectangle cropBox, int rotation) {
+		this(cropBox.getLowerLeftX(), cropBox.getLowerLeftY(), cropBox.getWidth(), cropBox.getHeight(), rotation);
+	}
+
+	public float getLowerLeftX() {
+		return lowerLeftX;
+	}
+
+	public float getLowerLeftY() {
+		return lowerLeftY;
+	}
+
+	public float getWidth() {
+		return width;
+	}
+
+	public float getHeight() {
+		return height;
+	}
+
+	/**
+	 * Clockwise rotation of the page when displayed, in degrees.
+	 */
+	public int getRotation() {
+		return rotation;
+	}
+}
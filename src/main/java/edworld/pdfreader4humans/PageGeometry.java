@@ -0,0 +1,366 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans;
+
+import static edworld.pdfreader4humans.BinaryComponentWriter.BORDER_BOTTOM;
+import static edworld.pdfreader4humans.BinaryComponentWriter.BORDER_LEFT;
+import static edworld.pdfreader4humans.BinaryComponentWriter.BORDER_RIGHT;
+import static edworld.pdfreader4humans.BinaryComponentWriter.BORDER_TOP;
+import static edworld.pdfreader4humans.BinaryComponentWriter.BOX;
+import static edworld.pdfreader4humans.BinaryComponentWriter.GRID;
+import static edworld.pdfreader4humans.BinaryComponentWriter.GROUP;
+import static edworld.pdfreader4humans.BinaryComponentWriter.MARGIN;
+import static edworld.pdfreader4humans.BinaryComponentWriter.TEXT;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact store of the component tree of a page. The components are kept in
+ * depth-first order in primitive columns, with the parent of each one and the
+ * end of its subtree, instead of one object per component with its own
+ * list of children. {@link Node} views give access to the same fields and are
+ * created only when requested; they are not components, which
+ * {@link #toComponents()} creates again.
+ */
+public class PageGeometry {
+	private int size;
+	private byte[] tags = new byte[16];
+	private float[] fromX = new float[16];
+	private float[] fromY = new float[16];
+	private float[] toX = new float[16];
+	private float[] toY = new float[16];
+	private float[] sizes = new float[16];
+	private int[] types = new int[16];
+	private int[] fonts = new int[16];
+	private int[] textEnds = new int[16];
+	private int[] parents = new int[16];
+	private int[] ends = new int[16];
+	private StringBuilder characters = new StringBuilder();
+	private List<String> strings = new ArrayList<String>();
+	private Map<String, Integer> stringIndexes = new HashMap<String, Integer>();
+
+	public PageGeometry(List<? extends Component> components) {
+		addAll(components, -1);
+		trim();
+	}
+
+	private PageGeometry() {
+	}
+
+	/**
+	 * Reads the next page written by {@link BinaryComponentWriter} without
+	 * creating its components.
+	 *
+	 * @return the geometry of the page, or null if there are no more pages
+	 */
+	public static PageGeometry read(BinaryComponentReader reader) throws IOException {
+		int event = reader.next();
+		if (event == BinaryComponentReader.END_DOCUMENT)
+			return null;
+		if (event != BinaryComponentReader.START_PAGE)
+			throw new IllegalStateException("The reader is in the middle of a page.");
+		PageGeometry geometry = new PageGeometry();
+		int parent = -1;
+		for (event = reader.next(); event != BinaryComponentReader.END_PAGE; event = reader.next())
+			if (event == BinaryComponentReader.START_COMPONENT)
+				parent = geometry.add(reader.getTag(), reader.getType(), reader.getFromX(), reader.getFromY(),
+						reader.getToX(), reader.getToY(), reader.getText(), reader.getFontName(),
+						reader.getTag() == TEXT ? reader.getFontSize() : reader.getLineWidth(), parent);
+			else {
+				geometry.ends[parent] = geometry.size;
+				parent = geometry.parents[parent];
+			}
+		geometry.trim();
+		return geometry;
+	}
+
+	private void addAll(List<? extends Component> components, int parent) {
+		for (Component component : components) {
+			int index;
+			int tag = BinaryComponentWriter.tag(component);
+			switch (tag & 0x0F) {
+			case TEXT:
+				TextComponent text = (TextComponent) component;
+				index = add(tag, text.getType(), text.getFromX(), text.getFromY(), text.getToX(), text.getToY(),
+						text.getText(), text.getFontName(), text.getFontSize(), parent);
+				break;
+			case GRID:
+				index = add(tag, component.getType(), component.getFromX(), component.getFromY(), component.getToX(),
+						component.getToY(), null, null, ((GridComponent) component).getLineWidth(), parent);
+				break;
+			case BOX:
+				index = add(tag, component.getType(), component.getFromX(), component.getFromY(), component.getToX(),
+						component.getToY(), null, null, ((BoxComponent) component).getLineWidth(), parent);
+				break;
+			default:
+				index = add(tag, component.getType(), component.getFromX(), component.getFromY(), component.getToX(),
+						component.getToY(), null, null, 0, parent);
+			}
+			addAll(component.getChildren(), index);
+			ends[index] = size;
+		}
+	}
+
+	private int add(int tag, String type, float fromX, float fromY, float toX, float toY, String text,
+			String fontName, float size, int parent) {
+		if (this.size == tags.length)
+			grow(2 * this.size);
+		int index = this.size++;
+		tags[index] = (byte) tag;
+		types[index] = string(type);
+		this.fromX[index] = fromX;
+		this.fromY[index] = fromY;
+		this.toX[index] = toX;
+		this.toY[index] = toY;
+		sizes[index] = size;
+		fonts[index] = fontName == null ? -1 : string(fontName);
+		if (text != null)
+			characters.append(text);
+		textEnds[index] = characters.length();
+		parents[index] = parent;
+		ends[index] = index + 1;
+		return index;
+	}
+
+	private int string(String string) {
+		Integer index = stringIndexes.get(string);
+		if (index == null) {
+			index = strings.size();
+			strings.add(string);
+			stringIndexes.put(string, index);
+		}
+		return index;
+	}
+
+	private void trim() {
+		grow(size);
+		characters.trimToSize();
+		stringIndexes = null;
+	}
+
+	private void grow(int capacity) {
+		tags = Arrays.copyOf(tags, capacity);
+		fromX = Arrays.copyOf(fromX, capacity);
+		fromY = Arrays.copyOf(fromY, capacity);
+		toX = Arrays.copyOf(toX, capacity);
+		toY = Arrays.copyOf(toY, capacity);
+		sizes = Arrays.copyOf(sizes, capacity);
+		types = Arrays.copyOf(types, capacity);
+		fonts = Arrays.copyOf(fonts, capacity);
+		textEnds = Arrays.copyOf(textEnds, capacity);
+		parents = Arrays.copyOf(parents, capacity);
+		ends = Arrays.copyOf(ends, capacity);
+	}
+
+	/**
+	 * Number of components of the page, at every level.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * View of the component at the given position in depth-first order.
+	 */
+	public Node get(int index) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException(String.valueOf(index));
+		return new Node(index);
+	}
+
+	public List<Node> getFirstLevelNodes() {
+		return new Siblings(size > 0 ? 0 : -1, size);
+	}
+
+	/**
+	 * Creates the components of the page again.
+	 */
+	public List<Component> toComponents() {
+		List<Component> components = new ArrayList<Component>();
+		for (Node node : getFirstLevelNodes())
+			components.add(node.toComponent());
+		return components;
+	}
+
+	/**
+	 * View of one component of a {@link PageGeometry}, keeping only its
+	 * position in the store.
+	 */
+	public class Node {
+		private int index;
+
+		private Node(int index) {
+			this.index = index;
+		}
+
+		public int getIndex() {
+			return index;
+		}
+
+		public String getType() {
+			return strings.get(types[index]);
+		}
+
+		public float getFromX() {
+			return fromX[index];
+		}
+
+		public float getFromY() {
+			return fromY[index];
+		}
+
+		public float getToX() {
+			return toX[index];
+		}
+
+		public float getToY() {
+			return toY[index];
+		}
+
+		public float getWidth() {
+			return getToX() - getFromX();
+		}
+
+		public float getHeight() {
+			return getToY() - getFromY();
+		}
+
+		/**
+		 * Text of a text component, or null.
+		 */
+		public String getText() {
+			if (kind() != TEXT)
+				return null;
+			return characters.substring(index == 0 ? 0 : textEnds[index - 1], textEnds[index]);
+		}
+
+		/**
+		 * Font name of a text component, or null.
+		 */
+		public String getFontName() {
+			return fonts[index] < 0 ? null : strings.get(fonts[index]);
+		}
+
+		public float getFontSize() {
+			return kind() == TEXT ? sizes[index] : 0;
+		}
+
+		public float getLineWidth() {
+			return kind() == GRID || kind() == BOX ? sizes[index] : 0;
+		}
+
+		public boolean isBorderLeft() {
+			return (tags[index] & BORDER_LEFT) != 0;
+		}
+
+		public boolean isBorderTop() {
+			return (tags[index] & BORDER_TOP) != 0;
+		}
+
+		public boolean isBorderRight() {
+			return (tags[index] & BORDER_RIGHT) != 0;
+		}
+
+		public boolean isBorderBottom() {
+			return (tags[index] & BORDER_BOTTOM) != 0;
+		}
+
+		/**
+		 * The component containing this one, or null for first level
+		 * components.
+		 */
+		public Node getParent() {
+			return parents[index] < 0 ? null : new Node(parents[index]);
+		}
+
+		public List<Node> getChildren() {
+			return new Siblings(ends[index] > index + 1 ? index + 1 : -1, ends[index]);
+		}
+
+		/**
+		 * Creates the component and its children.
+		 */
+		public Component toComponent() {
+			Component component;
+			switch (kind()) {
+			case TEXT:
+				component = new TextComponent(getText(), getFromX(), getFromY(), getToX(), getToY(), getFontName(),
+						getFontSize());
+				break;
+			case GRID:
+				component = new GridComponent(getType(), getFromX(), getFromY(), getToX(), getToY(), getLineWidth());
+				break;
+			case BOX:
+				component = new BoxComponent(getFromX(), getFromY(), getToX(), getToY(), getLineWidth(),
+						isBorderLeft(), isBorderTop(), isBorderRight(), isBorderBottom());
+				break;
+			case MARGIN:
+				component = new MarginComponent(getFromX(), getFromY(), getToX(), getToY());
+				break;
+			case GROUP:
+				component = new GroupComponent(getFromX(), getFromY(), getToX(), getToY());
+				break;
+			default:
+				throw new IllegalStateException("Unknown component kind " + kind());
+			}
+			for (Node child : getChildren())
+				component.addChild(child.toComponent());
+			return component;
+		}
+
+		private int kind() {
+			return tags[index] & 0x0F;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Node && ((Node) obj).index == index && ((Node) obj).geometry() == geometry();
+		}
+
+		@Override
+		public int hashCode() {
+			return index;
+		}
+
+		private PageGeometry geometry() {
+			return PageGeometry.this;
+		}
+
+		@Override
+		public String toString() {
+			return getType() + " :: " + getFromX() + ", " + getFromY() + ", " + getToX() + ", " + getToY();
+		}
+	}
+
+	/**
+	 * Components following each other through the ends of their subtrees.
+	 */
+	private class Siblings extends AbstractList<Node> {
+		private int[] indexes;
+
+		private Siblings(int first, int end) {
+			int count = 0;
+			for (int index = first; index >= 0 && index < end; index = ends[index])
+				count++;
+			indexes = new int[count];
+			count = 0;
+			for (int index = first; index >= 0 && index < end; index = ends[index])
+				indexes[count++] = index;
+		}
+
+		@Override
+		public Node get(int position) {
+			return new Node(indexes[position]);
+		}
+
+		@Override
+		public int size() {
+			return indexes.length;
+		}
+	}
+}
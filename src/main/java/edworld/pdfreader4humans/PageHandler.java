@@ -0,0 +1,9 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans;
+
+import java.io.IOException;
+import java.util.List;
+
+public interface PageHandler {
+	void handlePage(int pageNumber, List<Component> firstLevelComponents) throws IOException;
+}
@@ -0,0 +1,14 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+/**
+ * Receives the images rendered by {@link PDFReader#createPageImages}. Pages
+ * may be handled concurrently, and the image is reused for another page once
+ * the method returns, so it must be written out or copied before that.
+ */
+public interface PageImageHandler {
+	void handlePageImage(int pageNumber, BufferedImage image) throws IOException;
+}
@@ -0,0 +1,280 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Sorts components in reading order, giving the same order as the pairwise
+ * algorithm formerly used by {@link Component#smartSort(List)}.
+ * <p>
+ * Components whose vertical extents overlap form a band and are read from left
+ * to right. Each component is moved before the first component of the list
+ * that overlaps it and comes after it, so every band gathers behind the last
+ * of its components. Those last components never overlap each other and are
+ * sorted by their vertical position; then each band is sorted the same way
+ * and placed before its last component.
+ */
+public class ReadingOrder {
+	private ReadingOrder() {
+	}
+
+	public static <T extends Component> void sort(List<T> list) {
+		List<T> result = new ArrayList<T>(list.size());
+		LinkedList<Object> work = new LinkedList<Object>();
+		work.push(new ArrayList<T>(list));
+		while (!work.isEmpty()) {
+			Object item = work.pop();
+			if (item instanceof Component) {
+				@SuppressWarnings("unchecked")
+				T component = (T) item;
+				result.add(component);
+				continue;
+			}
+			@SuppressWarnings("unchecked")
+			List<T> band = (List<T>) item;
+			if (band.size() < 2 || sortedSingleBand(band)) {
+				result.addAll(band);
+				continue;
+			}
+			Level<T> level = new Level<T>(band);
+			List<Integer> lastComponents = level.lastComponents();
+			for (int position = lastComponents.size() - 1; position >= 0; position--) {
+				int last = lastComponents.get(position);
+				work.push(band.get(last));
+				List<T> before = level.before(last);
+				if (!before.isEmpty())
+					work.push(before);
+			}
+		}
+		list.clear();
+		list.addAll(result);
+	}
+
+	/**
+	 * When every component overlaps every other one and no two start at the
+	 * same point, the band is read from left to right.
+	 */
+	private static <T extends Component> boolean sortedSingleBand(List<T> band) {
+		float maxStart = Float.NEGATIVE_INFINITY;
+		float minEnd = Float.POSITIVE_INFINITY;
+		for (T component : band) {
+			float start = start(component);
+			float end = end(component);
+			if (Float.isNaN(start) || Float.isNaN(end) || Float.isNaN(component.getFromX())
+					|| Float.isNaN(component.getFromY()))
+				return false;
+			maxStart = max(maxStart, start);
+			minEnd = min(minEnd, end);
+		}
+		if (maxStart > minEnd)
+			return false;
+		List<T> sorted = new ArrayList<T>(band);
+		Collections.sort(sorted, new Comparator<T>() {
+			@Override
+			public int compare(T component1, T component2) {
+				int compare = Float.compare(component1.getFromX() + 0.0f, component2.getFromX() + 0.0f);
+				if (compare == 0)
+					compare = Float.compare(component1.getFromY() + 0.0f, component2.getFromY() + 0.0f);
+				return compare;
+			}
+		});
+		for (int index = 1; index < sorted.size(); index++)
+			if (sorted.get(index - 1).getFromX() == sorted.get(index).getFromX()
+					&& sorted.get(index - 1).getFromY() == sorted.get(index).getFromY())
+				return false;
+		band.clear();
+		band.addAll(sorted);
+		return true;
+	}
+
+	private static float start(Component component) {
+		return component.getFromY() + component.getHeight() / 20;
+	}
+
+	private static float end(Component component) {
+		return component.getToY() - component.getHeight() / 20;
+	}
+
+	/**
+	 * One step of the sort: finds the component each component is moved
+	 * before and gathers the bands in the order the pairwise algorithm built
+	 * them.
+	 */
+	private static class Level<T extends Component> {
+		private List<T> list;
+		private int size;
+		private int[] targets;
+		private int[] roots;
+		private int[] heads;
+		private int[] tails;
+		private int[] next;
+		private float[] minStart;
+		private float[] maxEnd;
+		private boolean[] inserted;
+
+		private Level(List<T> list) {
+			this.list = list;
+			size = list.size();
+			findTargets();
+			gatherBands();
+		}
+
+		/**
+		 * A component is moved before the first component of the list that
+		 * overlaps it vertically and compares after it; ties in position are
+		 * broken by list order. The components are visited from the last to
+		 * the first in that order, so the candidates are already in a segment
+		 * tree when each one is visited.
+		 */
+		private void findTargets() {
+			Integer[] order = new Integer[size];
+			for (int index = 0; index < size; index++)
+				order[index] = index;
+			Arrays.sort(order, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer index1, Integer index2) {
+					Component component1 = list.get(index1);
+					Component component2 = list.get(index2);
+					int compare = Float.compare(component1.getFromX() + 0.0f, component2.getFromX() + 0.0f);
+					if (compare == 0)
+						compare = Float.compare(component1.getFromY() + 0.0f, component2.getFromY() + 0.0f);
+					if (compare == 0)
+						compare = index2 - index1;
+					return compare;
+				}
+			});
+			targets = new int[size];
+			minStart = new float[4 * size];
+			maxEnd = new float[4 * size];
+			Arrays.fill(minStart, Float.POSITIVE_INFINITY);
+			Arrays.fill(maxEnd, Float.NEGATIVE_INFINITY);
+			inserted = new boolean[size];
+			for (int position = size - 1; position >= 0; position--) {
+				int index = order[position];
+				targets[index] = first(1, 0, size, list.get(index));
+				insert(1, 0, size, index);
+			}
+		}
+
+		private void insert(int node, int from, int to, int index) {
+			if (to - from == 1) {
+				inserted[index] = true;
+				float start = start(list.get(index));
+				float end = end(list.get(index));
+				minStart[node] = Float.isNaN(start) ? Float.NEGATIVE_INFINITY : start;
+				maxEnd[node] = Float.isNaN(end) ? Float.POSITIVE_INFINITY : end;
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			if (index < middle)
+				insert(2 * node, from, middle, index);
+			else
+				insert(2 * node + 1, middle, to, index);
+			minStart[node] = min(minStart[2 * node], minStart[2 * node + 1]);
+			maxEnd[node] = max(maxEnd[2 * node], maxEnd[2 * node + 1]);
+		}
+
+		private int first(int node, int from, int to, Component component) {
+			if (end(component) < minStart[node] || maxEnd[node] < start(component))
+				return -1;
+			if (to - from == 1) {
+				Component candidate = list.get(from);
+				return inserted[from] && !component.verticallyBefore(candidate) && !component.verticallyAfter(candidate) ? from : -1;
+			}
+			int middle = (from + to) >>> 1;
+			int index = first(2 * node, from, middle, component);
+			return index >= 0 ? index : first(2 * node + 1, middle, to, component);
+		}
+
+		/**
+		 * Replays the moves in the order the pairs of components were
+		 * compared, joining the band of each moved component to the band its
+		 * target currently belongs to.
+		 */
+		private void gatherBands() {
+			List<Integer> moved = new ArrayList<Integer>();
+			for (int index = 0; index < size; index++)
+				if (targets[index] >= 0)
+					moved.add(index);
+			Collections.sort(moved, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer index1, Integer index2) {
+					int compare = min(index1, targets[index1]) - min(index2, targets[index2]);
+					if (compare == 0)
+						compare = max(index1, targets[index1]) - max(index2, targets[index2]);
+					return compare;
+				}
+			});
+			roots = new int[size];
+			heads = new int[size];
+			tails = new int[size];
+			next = new int[size];
+			for (int index = 0; index < size; index++) {
+				roots[index] = index;
+				heads[index] = -1;
+				tails[index] = -1;
+				next[index] = -1;
+			}
+			for (int index : moved) {
+				int root = root(targets[index]);
+				// the band of the moved component and then the component
+				// itself are appended to the band of the root
+				append(root, heads[index], tails[index]);
+				append(root, index, index);
+				heads[index] = -1;
+				tails[index] = -1;
+				roots[index] = root;
+			}
+		}
+
+		private void append(int root, int head, int tail) {
+			if (head < 0)
+				return;
+			if (heads[root] < 0)
+				heads[root] = head;
+			else
+				next[tails[root]] = head;
+			tails[root] = tail;
+		}
+
+		private int root(int index) {
+			while (roots[index] != index) {
+				roots[index] = roots[roots[index]];
+				index = roots[index];
+			}
+			return index;
+		}
+
+		/**
+		 * Components not moved before others, sorted by their natural order.
+		 */
+		private List<Integer> lastComponents() {
+			List<Integer> lastComponents = new ArrayList<Integer>();
+			for (int index = 0; index < size; index++)
+				if (targets[index] < 0)
+					lastComponents.add(index);
+			Collections.sort(lastComponents, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer index1, Integer index2) {
+					return list.get(index1).compareTo(list.get(index2));
+				}
+			});
+			return lastComponents;
+		}
+
+		private List<T> before(int last) {
+			List<T> before = new ArrayList<T>();
+			for (int member = heads[last]; member >= 0; member = next[member])
+				before.add(list.get(member));
+			return before;
+		}
+	}
+}
@@ -1,6 +1,9 @@
 // This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
 package edworld.pdfreader4humans;
 
+import java.io.IOException;
+import java.io.Writer;
+
 public class TextComponent extends Component {
 	protected static float UNDERLINE_TOLERANCE = 0.5f;
 	protected static final float MAX_CONSECUTIVE_DISTANCE = 2.3f;
@@ -15,6 +18,10 @@ public class TextComponent extends Component {
 		this.fontSize = fontSize;
 	}
 
+	public static float getUnderlineTolerance() {
+		return UNDERLINE_TOLERANCE;
+	}
+
 	public String getText() {
 		return text;
 	}
@@ -48,13 +55,30 @@ public class TextComponent extends Component {
 		return getWidth() / getText().length();
 	}
 
+	@Override
+	public boolean writeField(String fieldName, Writer writer) throws IOException {
+		switch (fieldName) {
+		case "text":
+			writer.write(getText());
+			return true;
+		case "fontName":
+			writer.write(getFontName());
+			return true;
+		case "fontSize":
+			writer.write(String.valueOf(getFontSize()));
+			return true;
+		default:
+			return super.writeField(fieldName, writer);
+		}
+	}
+
+	/**
+	 * @deprecated the fields are written by {@link #writeField}
+	 */
+	@Deprecated
 	@Override
 	public String output(String template) {
-		String output = super.output(template);
-		output = fillTemplate(output, "text", getText());
-		output = fillTemplate(output, "fontName", getFontName());
-		output = fillTemplate(output, "fontSize", getFontSize());
-		return output;
+		return super.output(template);
 	}
 
 	@Override
@@ -0,0 +1,118 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans.impl;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import java.util.List;
+
+import edworld.pdfreader4humans.Component;
+
+/**
+ * Index over components sorted by {@link Component#orderByYX()}, answering
+ * {@link Component#nextUpperHorizontalComponent} and
+ * {@link Component#nextLowerHorizontalComponent} queries with binary searches
+ * and a segment tree of horizontal extents instead of scanning the list.
+ */
+class HorizontalIndex {
+	private List<Component> components;
+	private float[] maxToY;
+	private int sortedCount;
+	private float[] minFromX;
+	private float[] maxToX;
+
+	public HorizontalIndex(List<Component> components) {
+		this.components = components;
+		int size = components.size();
+		maxToY = new float[size];
+		float toY = Float.NEGATIVE_INFINITY;
+		for (int index = 0; index < size; index++) {
+			toY = max(toY, notNaN(components.get(index).getToY(), Float.NEGATIVE_INFINITY));
+			maxToY[index] = toY;
+		}
+		sortedCount = size;
+		while (sortedCount > 0 && Float.isNaN(components.get(sortedCount - 1).getFromY()))
+			sortedCount--;
+		minFromX = new float[4 * max(1, size)];
+		maxToX = new float[4 * max(1, size)];
+		if (size > 0)
+			build(1, 0, size);
+	}
+
+	private void build(int node, int from, int to) {
+		if (to - from == 1) {
+			minFromX[node] = notNaN(components.get(from).getFromX(), Float.POSITIVE_INFINITY);
+			maxToX[node] = notNaN(components.get(from).getToX(), Float.NEGATIVE_INFINITY);
+			return;
+		}
+		int middle = (from + to) >>> 1;
+		build(2 * node, from, middle);
+		build(2 * node + 1, middle, to);
+		minFromX[node] = min(minFromX[2 * node], minFromX[2 * node + 1]);
+		maxToX[node] = max(maxToX[2 * node], maxToX[2 * node + 1]);
+	}
+
+	/**
+	 * Same as
+	 * {@code component.nextUpperHorizontalComponent(maxLeft, minRight, components)}
+	 */
+	public Component nextUpper(Component component, float maxLeft, float minRight) {
+		int end = 0;
+		int high = components.size();
+		while (end < high) {
+			int middle = (end + high) >>> 1;
+			if (maxToY[middle] >= component.getFromY())
+				high = middle;
+			else
+				end = middle + 1;
+		}
+		int index = last(1, 0, components.size(), end, maxLeft, minRight);
+		return index < 0 ? null : components.get(index);
+	}
+
+	/**
+	 * Same as
+	 * {@code component.nextLowerHorizontalComponent(maxLeft, minRight, components)}
+	 */
+	public Component nextLower(Component component, float maxLeft, float minRight) {
+		int start = 0;
+		int high = sortedCount;
+		while (start < high) {
+			int middle = (start + high) >>> 1;
+			if (components.get(middle).getFromY() > component.getToY())
+				high = middle;
+			else
+				start = middle + 1;
+		}
+		int index = first(1, 0, components.size(), start, sortedCount, maxLeft, minRight);
+		return index < 0 ? null : components.get(index);
+	}
+
+	private int first(int node, int from, int to, int start, int end, float maxLeft, float minRight) {
+		if (to <= start || from >= end || !(minFromX[node] <= maxLeft && maxToX[node] >= minRight))
+			return -1;
+		if (to - from == 1)
+			return spans(components.get(from), maxLeft, minRight) ? from : -1;
+		int middle = (from + to) >>> 1;
+		int index = first(2 * node, from, middle, start, end, maxLeft, minRight);
+		return index >= 0 ? index : first(2 * node + 1, middle, to, start, end, maxLeft, minRight);
+	}
+
+	private int last(int node, int from, int to, int end, float maxLeft, float minRight) {
+		if (from >= end || !(minFromX[node] <= maxLeft && maxToX[node] >= minRight))
+			return -1;
+		if (to - from == 1)
+			return spans(components.get(from), maxLeft, minRight) ? from : -1;
+		int middle = (from + to) >>> 1;
+		int index = last(2 * node + 1, middle, to, end, maxLeft, minRight);
+		return index >= 0 ? index : last(2 * node, from, middle, end, maxLeft, minRight);
+	}
+
+	private boolean spans(Component candidate, float maxLeft, float minRight) {
+		return candidate.getFromX() <= maxLeft && candidate.getToX() >= minRight;
+	}
+
+	static float notNaN(float value, float replacement) {
+		return Float.isNaN(value) ? replacement : value;
+	}
+}
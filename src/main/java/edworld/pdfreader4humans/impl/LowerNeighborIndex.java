@@ -0,0 +1,72 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans.impl;
+
+import static edworld.pdfreader4humans.impl.HorizontalIndex.notNaN;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import java.util.List;
+
+import edworld.pdfreader4humans.Component;
+
+/**
+ * Index over components in any order, answering
+ * {@link Component#nextLowerHorizontalComponent} queries through a segment
+ * tree of vertical and horizontal extents instead of scanning the list.
+ */
+class LowerNeighborIndex {
+	private List<Component> components;
+	private float[] maxFromY;
+	private float[] minFromX;
+	private float[] maxToX;
+
+	public LowerNeighborIndex(List<Component> components) {
+		this.components = components;
+		int size = components.size();
+		maxFromY = new float[4 * max(1, size)];
+		minFromX = new float[4 * max(1, size)];
+		maxToX = new float[4 * max(1, size)];
+		if (size > 0)
+			build(1, 0, size);
+	}
+
+	private void build(int node, int from, int to) {
+		if (to - from == 1) {
+			Component component = components.get(from);
+			maxFromY[node] = notNaN(component.getFromY(), Float.NEGATIVE_INFINITY);
+			minFromX[node] = notNaN(component.getFromX(), Float.POSITIVE_INFINITY);
+			maxToX[node] = notNaN(component.getToX(), Float.NEGATIVE_INFINITY);
+			return;
+		}
+		int middle = (from + to) >>> 1;
+		build(2 * node, from, middle);
+		build(2 * node + 1, middle, to);
+		maxFromY[node] = max(maxFromY[2 * node], maxFromY[2 * node + 1]);
+		minFromX[node] = min(minFromX[2 * node], minFromX[2 * node + 1]);
+		maxToX[node] = max(maxToX[2 * node], maxToX[2 * node + 1]);
+	}
+
+	/**
+	 * Same as
+	 * {@code component.nextLowerHorizontalComponent(maxLeft, minRight, components)}
+	 */
+	public Component nextLower(Component component, float maxLeft, float minRight) {
+		if (components.isEmpty())
+			return null;
+		int index = first(1, 0, components.size(), component.getToY(), maxLeft, minRight);
+		return index < 0 ? null : components.get(index);
+	}
+
+	private int first(int node, int from, int to, float toY, float maxLeft, float minRight) {
+		if (!(maxFromY[node] > toY && minFromX[node] <= maxLeft && maxToX[node] >= minRight))
+			return -1;
+		if (to - from == 1) {
+			Component candidate = components.get(from);
+			return candidate.getFromY() > toY && candidate.getFromX() <= maxLeft && candidate.getToX() >= minRight
+					? from : -1;
+		}
+		int middle = (from + to) >>> 1;
+		int index = first(2 * node, from, middle, toY, maxLeft, minRight);
+		return index >= 0 ? index : first(2 * node + 1, middle, to, toY, maxLeft, minRight);
+	}
+}
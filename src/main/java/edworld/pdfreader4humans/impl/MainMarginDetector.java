@@ -1,11 +1,19 @@
 // This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
 package edworld.pdfreader4humans.impl;
 
+import static edworld.pdfreader4humans.impl.HorizontalIndex.notNaN;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
 
 import edworld.pdfreader4humans.Component;
 import edworld.pdfreader4humans.MarginComponent;
@@ -17,60 +25,247 @@ public class MainMarginDetector implements MarginDetector {
 	public List<MarginComponent> detectMargins(List<? extends Component> components) {
 		List<Component> sortedComponents = new ArrayList<Component>(components);
 		Collections.sort(sortedComponents);
-		List<MarginComponent> margins = new ArrayList<MarginComponent>();
-		Map<Component, MarginComponent> map = new HashMap<Component, MarginComponent>();
+		Margins margins = new Margins(new LowerNeighborIndex(sortedComponents));
+		Map<Component, Integer> map = new HashMap<Component, Integer>();
 		for (Component component : sortedComponents)
 			if (map.get(component) == null && component instanceof TextComponent)
-				map.put(component,
-						provideMarginForComponent((TextComponent) component, sortedComponents, margins, map));
-		joinConnectedMargins(margins, map);
-		for (Component component : map.keySet())
-			if (map.get(component).getArea() == component.getArea())
-				margins.remove(map.get(component));
-		Collections.sort(margins);
-		return margins;
+				map.put(component, margins.provideMarginForComponent((TextComponent) component));
+		margins.joinConnectedMargins();
+		for (Component component : map.keySet()) {
+			int margin = margins.find(map.get(component));
+			if (margins.get(margin).getArea() == component.getArea())
+				margins.remove(margin);
+		}
+		List<MarginComponent> result = margins.toList();
+		Collections.sort(result);
+		return result;
 	}
 
-	private MarginComponent provideMarginForComponent(TextComponent component, List<Component> components,
-			List<MarginComponent> margins, Map<Component, MarginComponent> map) {
-		for (MarginComponent margin : margins) {
-			Component nextLowerComponent = margin.nextLowerHorizontalComponent(margin.getToX(), margin.getFromX(),
-					components);
-			if (nextLowerComponent != null && nextLowerComponent.underlineOf(margin))
-				nextLowerComponent = nextLowerComponent.nextLowerHorizontalComponent(margin.getToX(), margin.getFromX(),
-						components);
-			if (component == nextLowerComponent) {
-				MarginComponent extendedMargin = margin.extended(component);
-				margins.remove(margin);
-				margins.add(extendedMargin);
-				updateMap(map, margin, extendedMargin);
-				return extendedMargin;
+	/**
+	 * Margins numbered in the order they are created. A margin replaced by a
+	 * larger one points to it, so the current margin of a component is found
+	 * by following these links. While connected margins are joined, the
+	 * current ones are also kept in a segment tree of extents over their
+	 * numbers.
+	 */
+	private static class Margins {
+		private LowerNeighborIndex index;
+		private List<MarginComponent> margins = new ArrayList<MarginComponent>();
+		private int[] replacements = new int[16];
+		private Set<Integer> current = new LinkedHashSet<Integer>();
+		private Map<Component, List<Integer>> marginsAbove = new HashMap<Component, List<Integer>>();
+		private int capacity;
+		private float[] minFromX;
+		private float[] maxToX;
+		private float[] minFromY;
+		private float[] maxToY;
+
+		private Margins(LowerNeighborIndex index) {
+			this.index = index;
+		}
+
+		private MarginComponent get(int margin) {
+			return margins.get(margin);
+		}
+
+		private int add(MarginComponent margin) {
+			int number = margins.size();
+			margins.add(margin);
+			if (number == replacements.length)
+				replacements = Arrays.copyOf(replacements, 2 * number);
+			replacements[number] = number;
+			current.add(number);
+			update(number);
+			return number;
+		}
+
+		private void replace(int margin, int replacement) {
+			current.remove(margin);
+			replacements[margin] = replacement;
+			margins.set(margin, null);
+			update(margin);
+		}
+
+		private void remove(int margin) {
+			current.remove(margin);
+			update(margin);
+		}
+
+		private int find(int margin) {
+			while (replacements[margin] != margin) {
+				replacements[margin] = replacements[replacements[margin]];
+				margin = replacements[margin];
 			}
+			return margin;
 		}
-		MarginComponent margin = new MarginComponent(component.getFromX(), component.getFromY(), component.getToX(),
-				component.getToY());
-		margins.add(margin);
-		return margin;
-	}
 
-	private void joinConnectedMargins(List<MarginComponent> margins, Map<Component, MarginComponent> map) {
-		for (MarginComponent marginA : margins)
-			for (MarginComponent marginB : margins)
-				if (marginA.intersects(marginB)) {
-					MarginComponent extendedMargin = marginA.extended(marginB);
-					margins.remove(marginA);
-					margins.remove(marginB);
-					margins.add(extendedMargin);
-					updateMap(map, marginA, extendedMargin);
-					updateMap(map, marginB, extendedMargin);
-					joinConnectedMargins(margins, map);
-					return;
+		private List<MarginComponent> toList() {
+			List<MarginComponent> list = new ArrayList<MarginComponent>();
+			for (int margin : current)
+				list.add(get(margin));
+			return list;
+		}
+
+		/**
+		 * The earliest margin whose next lower component is the given one is
+		 * extended to it; otherwise a new margin is created. Since each text
+		 * component is visited once, the next lower component of a margin is
+		 * found when the margin is created.
+		 */
+		private int provideMarginForComponent(TextComponent component) {
+			List<Integer> candidates = marginsAbove.remove(component);
+			if (candidates != null)
+				for (int margin : candidates)
+					if (current.contains(margin)) {
+						int extendedMargin = add(get(margin).extended(component));
+						replace(margin, extendedMargin);
+						waitForNextLowerComponent(extendedMargin);
+						return extendedMargin;
+					}
+			int margin = add(new MarginComponent(component.getFromX(), component.getFromY(), component.getToX(),
+					component.getToY()));
+			waitForNextLowerComponent(margin);
+			return margin;
+		}
+
+		private void waitForNextLowerComponent(int number) {
+			MarginComponent margin = get(number);
+			Component nextLowerComponent = index.nextLower(margin, margin.getToX(), margin.getFromX());
+			if (nextLowerComponent != null && nextLowerComponent.underlineOf(margin))
+				nextLowerComponent = index.nextLower(nextLowerComponent, margin.getToX(), margin.getFromX());
+			if (nextLowerComponent == null)
+				return;
+			if (!marginsAbove.containsKey(nextLowerComponent))
+				marginsAbove.put(nextLowerComponent, new ArrayList<Integer>());
+			marginsAbove.get(nextLowerComponent).add(number);
+		}
+
+		/**
+		 * Repeatedly joins the earliest margin intersecting another one with the
+		 * earliest margin it intersects. A margin intersecting another one keeps
+		 * intersecting the margin that replaces it, so only the margins
+		 * intersecting a new margin need to be queued. Each join removes two
+		 * margins and adds one, so the numbers of all margins fit in the tree
+		 * built at the start.
+		 */
+		private void joinConnectedMargins() {
+			capacity = max(1, margins.size() + current.size());
+			minFromX = new float[4 * capacity];
+			maxToX = new float[4 * capacity];
+			minFromY = new float[4 * capacity];
+			maxToY = new float[4 * capacity];
+			build(1, 0, capacity);
+			PriorityQueue<Integer> connected = new PriorityQueue<Integer>();
+			for (int margin : current)
+				if (firstIntersecting(margin) >= 0)
+					connected.add(margin);
+			while (!connected.isEmpty()) {
+				int marginA = connected.peek();
+				int marginB = current.contains(marginA) ? firstIntersecting(marginA) : -1;
+				if (marginB < 0) {
+					connected.poll();
+					continue;
 				}
-	}
+				int extendedMargin = add(get(marginA).extended(get(marginB)));
+				replace(marginA, extendedMargin);
+				replace(marginB, extendedMargin);
+				List<Integer> intersecting = intersecting(extendedMargin);
+				if (!intersecting.isEmpty()) {
+					connected.addAll(intersecting);
+					connected.add(extendedMargin);
+				}
+			}
+		}
+
+		/**
+		 * Current margins intersecting the given one, in the order they were
+		 * created.
+		 */
+		private List<Integer> intersecting(int number) {
+			List<Integer> intersecting = new ArrayList<Integer>();
+			collect(1, 0, capacity, get(number), intersecting);
+			return intersecting;
+		}
 
-	private void updateMap(Map<Component, MarginComponent> map, MarginComponent fromMargin, MarginComponent toMargin) {
-		for (Component component : map.keySet())
-			if (map.get(component) == fromMargin)
-				map.put(component, toMargin);
+		private int firstIntersecting(int number) {
+			return first(1, 0, capacity, get(number));
+		}
+
+		private void build(int node, int from, int to) {
+			if (to - from == 1) {
+				setLeaf(node, from);
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			build(2 * node, from, middle);
+			build(2 * node + 1, middle, to);
+			join(node);
+		}
+
+		private void update(int number) {
+			if (minFromX != null)
+				update(1, 0, capacity, number);
+		}
+
+		private void update(int node, int from, int to, int number) {
+			if (to - from == 1) {
+				setLeaf(node, number);
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			if (number < middle)
+				update(2 * node, from, middle, number);
+			else
+				update(2 * node + 1, middle, to, number);
+			join(node);
+		}
+
+		private void setLeaf(int node, int number) {
+			if (!current.contains(number)) {
+				minFromX[node] = minFromY[node] = Float.POSITIVE_INFINITY;
+				maxToX[node] = maxToY[node] = Float.NEGATIVE_INFINITY;
+				return;
+			}
+			MarginComponent margin = get(number);
+			minFromX[node] = notNaN(margin.getFromX(), Float.POSITIVE_INFINITY);
+			maxToX[node] = notNaN(margin.getToX(), Float.NEGATIVE_INFINITY);
+			minFromY[node] = notNaN(margin.getFromY(), Float.POSITIVE_INFINITY);
+			maxToY[node] = notNaN(margin.getToY(), Float.NEGATIVE_INFINITY);
+		}
+
+		private void join(int node) {
+			minFromX[node] = min(minFromX[2 * node], minFromX[2 * node + 1]);
+			maxToX[node] = max(maxToX[2 * node], maxToX[2 * node + 1]);
+			minFromY[node] = min(minFromY[2 * node], minFromY[2 * node + 1]);
+			maxToY[node] = max(maxToY[2 * node], maxToY[2 * node + 1]);
+		}
+
+		private boolean mayIntersect(int node, MarginComponent margin) {
+			return minFromX[node] <= margin.getToX() && maxToX[node] >= margin.getFromX()
+					&& minFromY[node] <= margin.getToY() && maxToY[node] >= margin.getFromY();
+		}
+
+		private void collect(int node, int from, int to, MarginComponent margin, List<Integer> intersecting) {
+			if (!mayIntersect(node, margin))
+				return;
+			if (to - from == 1) {
+				if (current.contains(from) && margin.intersects(get(from)))
+					intersecting.add(from);
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			collect(2 * node, from, middle, margin, intersecting);
+			collect(2 * node + 1, middle, to, margin, intersecting);
+		}
+
+		private int first(int node, int from, int to, MarginComponent margin) {
+			if (!mayIntersect(node, margin))
+				return -1;
+			if (to - from == 1)
+				return current.contains(from) && margin.intersects(get(from)) ? from : -1;
+			int middle = (from + to) >>> 1;
+			int number = first(2 * node, from, middle, margin);
+			return number >= 0 ? number : first(2 * node + 1, middle, to, margin);
+		}
 	}
 }
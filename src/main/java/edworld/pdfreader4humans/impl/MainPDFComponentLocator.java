@@ -1,26 +1,29 @@
 // This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
 package edworld.pdfreader4humans.impl;
 
-import static java.lang.Math.abs;
 import static java.lang.Math.max;
 import static java.lang.Math.min;
 
+import java.awt.geom.GeneralPath;
 import java.awt.geom.Point2D;
 import java.io.IOException;
 import java.io.StringWriter;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.contentstream.operator.state.SetLineWidth;
 import org.apache.pdfbox.cos.COSBase;
 import org.apache.pdfbox.cos.COSNumber;
+import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
-import org.apache.pdfbox.rendering.PDFRenderer;
-import org.apache.pdfbox.rendering.PageDrawer;
-import org.apache.pdfbox.rendering.PageDrawerParameters;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotation;
 import org.apache.pdfbox.text.PDFTextStripper;
 import org.apache.pdfbox.text.TextPosition;
 
@@ -32,236 +35,521 @@ import edworld.pdfreader4humans.TextComponent;
 
 public class MainPDFComponentLocator implements PDFComponentLocator {
 	private static final String SPACE = " ";
-	private Map<PDFPage, List<GridComponent>> cachedGridComponents = new HashMap<PDFPage, List<GridComponent>>();
-	private Map<PDFPage, List<TextComponent>> cachedTextComponents = new HashMap<PDFPage, List<TextComponent>>();
+	private static final char[][] FUSIONS = { { 'o', '-', 'º' }, { 'a', '-', 'ª' } };
+	private static final int DEFAULT_CACHE_SIZE = 32;
+	private Map<PageKey, LocatedComponents> cache;
+	private ReferenceQueue<PDDocument> collectedDocuments = new ReferenceQueue<PDDocument>();
+	private long hitCount;
+	private long missCount;
+	private long evictionCount;
+	private Pass lastPass;
+
+	public MainPDFComponentLocator() {
+		this(DEFAULT_CACHE_SIZE);
+	}
+
+	/**
+	 * Locator that keeps the components of the most recently used pages.
+	 * The cache does not keep documents reachable, and pages of closed or
+	 * collected documents are dropped from it.
+	 *
+	 * @param cacheSize
+	 *            maximum number of pages whose components are kept
+	 */
+	public MainPDFComponentLocator(final int cacheSize) {
+		cache = new LinkedHashMap<PageKey, LocatedComponents>(16, 0.75F, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<PageKey, LocatedComponents> eldest) {
+				if (size() <= cacheSize)
+					return false;
+				evictionCount++;
+				return true;
+			}
+		};
+	}
 
 	public List<GridComponent> locateGridComponents(PDFPage page) throws IOException {
-		List<GridComponent> gridComponents = cachedGridComponents.get(page);
-		if (gridComponents != null)
-			return gridComponents;
-		locateComponents(page);
-		return cachedGridComponents.get(page);
+		return locateComponents(page).gridComponents;
 	}
 
 	public List<TextComponent> locateTextComponents(PDFPage page) throws IOException {
-		List<TextComponent> textComponents = cachedTextComponents.get(page);
-		if (textComponents != null)
-			return textComponents;
-		locateComponents(page);
-		return cachedTextComponents.get(page);
+		return locateComponents(page).textComponents;
 	}
 
-	private void locateComponents(PDFPage page) throws IOException {
-		List<GridComponent> gridComponents = locateAllGridComponents(page);
-		List<TextComponent> textComponents = locateAllTextComponents(page, gridComponents);
-		cachedGridComponents.put(page, gridComponents);
-		Collections.sort(textComponents);
-		cachedTextComponents.put(page, textComponents);
+	public synchronized long getHitCount() {
+		return hitCount;
 	}
 
-	protected List<GridComponent> locateAllGridComponents(PDFPage page) throws IOException {
-		final List<GridComponent> list = new ArrayList<GridComponent>();
-		PDFRenderer renderer = new PDFRenderer(page.getDoc()) {
-			protected PageDrawer createPageDrawer(PageDrawerParameters parameters) throws IOException {
-				return new PageDrawer(parameters) {
-					@Override
-					public void processOperator(Operator operator, List<COSBase> arguments) throws IOException {
-						String operation = operator.getName();
-						if (isTextOperation(operation))
-							return;
-						if (operation.equals("i")) {
-							processSetFlatnessTolerance((COSNumber) arguments.get(0));
-							return;
-						}
-						if (operation.equals("l"))
-							processLineTo((COSNumber) arguments.get(0), (COSNumber) arguments.get(1));
-						else if (operation.equals("re"))
-							processAppendRectangleToPath((COSNumber) arguments.get(0), (COSNumber) arguments.get(1),
-									(COSNumber) arguments.get(2), (COSNumber) arguments.get(3));
-						super.processOperator(operator, arguments);
-					}
-
-					private void processSetFlatnessTolerance(COSNumber flatnessTolerance) {
-						getGraphicsState().setFlatness(flatnessTolerance.doubleValue());
-					}
+	public synchronized long getMissCount() {
+		return missCount;
+	}
 
-					private void processLineTo(COSNumber x, COSNumber y) {
-						Point2D from = getLinePath().getCurrentPoint();
-						Point2D to = transformedPoint(x.floatValue(), y.floatValue());
-						if (to.getX() == from.getX() || to.getY() == from.getY())
-							addGridComponent("line", from, to);
-					}
+	public synchronized long getEvictionCount() {
+		return evictionCount;
+	}
 
-					private void processAppendRectangleToPath(COSNumber x, COSNumber y, COSNumber w, COSNumber h) {
-						Point2D from = transformedPoint(x.floatValue(), y.floatValue());
-						Point2D to = transformedPoint(w.floatValue() + x.floatValue(), h.floatValue() + y.floatValue());
-						addGridComponent("rect", from, to);
-					}
+	private synchronized LocatedComponents locateComponents(PDFPage page) throws IOException {
+		removeClosedDocuments();
+		LocatedComponents components = cache.get(new PageKey(page, null));
+		if (components != null) {
+			hitCount++;
+			return components;
+		}
+		missCount++;
+		List<GridComponent> gridComponents = locateAllGridComponents(page);
+		List<TextComponent> textComponents = locateAllTextComponents(page, gridComponents);
+		Collections.sort(textComponents);
+		components = new LocatedComponents(gridComponents, textComponents);
+		cache.put(new PageKey(page, collectedDocuments), components);
+		return components;
+	}
 
-					private void addGridComponent(String type, Point2D from, Point2D to) {
-						float fromX = (float) min(from.getX(), to.getX());
-						float fromY = (float) min(adjustY(from.getY()), adjustY(to.getY()));
-						float toX = (float) max(from.getX(), to.getX());
-						float toY = (float) max(adjustY(from.getY()), adjustY(to.getY()));
-						list.add(new GridComponent(type, fromX, fromY, toX, toY, getGraphicsState().getLineWidth()));
-					}
+	private void removeClosedDocuments() {
+		for (Object key = collectedDocuments.poll(); key != null; key = collectedDocuments.poll())
+			if (cache.remove(key) != null)
+				evictionCount++;
+		Iterator<PageKey> iterator = cache.keySet().iterator();
+		while (iterator.hasNext()) {
+			PDDocument doc = iterator.next().get();
+			if (doc == null || doc.getDocument().isClosed()) {
+				iterator.remove();
+				evictionCount++;
+			}
+		}
+	}
 
-					private double adjustY(double y) {
-						return getPage().getBBox().getHeight() - y;
-					}
+	/**
+	 * Locates the grid components of a page. The text components found in the
+	 * same pass over the content stream are kept for
+	 * {@link #locateAllTextComponents} when it receives the returned list.
+	 */
+	protected List<GridComponent> locateAllGridComponents(PDFPage page) throws IOException {
+		List<GridComponent> gridComponents = new ArrayList<GridComponent>();
+		lastPass = locate(page, gridComponents, true);
+		return gridComponents;
+	}
 
-					private boolean isTextOperation(String operation) {
-						return "/BT/ET/T*/Tc/Td/TD/Tf/Tj/TJ/TL/Tm/Tr/Ts/Tw/Tz/'/\"/".contains("/" + operation + "/");
-					}
-				};
-			}
-		};
-		renderer.renderImage(page.getIndex());
-		return list;
+	/**
+	 * Locates the text components of a page, separated by the given grid
+	 * components, and removes from these the ones underlining text. No pass
+	 * is made when the given components are those just returned by
+	 * {@link #locateAllGridComponents}.
+	 */
+	protected List<TextComponent> locateAllTextComponents(PDFPage page, List<GridComponent> gridComponents)
+			throws IOException {
+		Pass pass = lastPass;
+		if (pass == null || pass.gridComponents != gridComponents)
+			pass = locate(page, gridComponents, false);
+		lastPass = null;
+		if (pass.underlines != null)
+			pass.underlines.removeMarked(gridComponents);
+		return pass.textComponents;
 	}
 
-	protected List<TextComponent> locateAllTextComponents(PDFPage page, final List<GridComponent> gridComponents)
+	/**
+	 * Locates the text components of a page against the given grid
+	 * components, adding to them those found in the same pass when
+	 * locateGrids is true.
+	 */
+	private Pass locate(PDFPage page, final List<GridComponent> gridComponents, final boolean locateGrids)
 			throws IOException {
 		final PDPage thePage = page.getPage();
 		return new PDFTextStripper() {
-			private Map<String, String> fusions;
 			List<Component> horizontalComponents;
+			private UnderlineIndex underlines;
 			List<Component> verticalComponents;
 			private ArrayList<TextComponent> list;
+			private GeneralPath linePath = new GeneralPath();
+			private boolean showingAnnotations;
+			private StringBuilder runText = new StringBuilder();
 
 			{
-				fusions = new HashMap<String, String>();
-				fusions.put("o-", "º");
-				fusions.put("a-", "ª");
+				addOperator(new SetLineWidth());
 			}
 
-			public List<TextComponent> locateTextComponents() throws IOException {
-				horizontalComponents = Component.horizontal(gridComponents);
-				verticalComponents = Component.vertical(gridComponents);
+			public Pass locateTextComponents() throws IOException {
 				list = new ArrayList<TextComponent>();
 				setStartPage(getCurrentPageNo());
 				setEndPage(getCurrentPageNo());
 				setSortByPosition(false);
-				if (thePage.hasContents()) {
-					output = new StringWriter();
-					processPage(thePage);
-				}
+				output = new StringWriter();
+				processPage(thePage);
 				joinConsecutiveTexts(list);
-				return list;
+				return new Pass(gridComponents, list, underlines);
 			}
 
-			protected void joinConsecutiveTexts(ArrayList<TextComponent> textComponents) {
-				for (int i = 0; i < textComponents.size() - 1; i++) {
-					TextComponent currentComponent = textComponents.get(i);
-					TextComponent nextComponent = textComponents.get(i + 1);
-					if (currentComponent.consecutive(nextComponent, false)) {
-						boolean mustSeparate = false;
-						TextComponent newComponent = joinTextComponents(currentComponent, SPACE, nextComponent);
-						for (Component separator : verticalComponents)
-							if (separator.intersects(newComponent) && !separator.contains(newComponent)) {
-								mustSeparate = true;
-								break;
-							}
-						if (!mustSeparate) {
-							textComponents.set(i, newComponent);
-							textComponents.remove(i + 1);
-							i--;
-						}
+			@Override
+			protected void writePage() throws IOException {
+				showingAnnotations = true;
+				for (PDAnnotation annotation : thePage.getAnnotations())
+					if (!annotation.isNoView() && !annotation.isHidden())
+						showAnnotation(annotation);
+				showingAnnotations = false;
+				horizontalComponents = Component.horizontal(gridComponents);
+				underlines = new UnderlineIndex(horizontalComponents);
+				verticalComponents = Component.vertical(gridComponents);
+				super.writePage();
+			}
+
+			@Override
+			protected void processOperator(Operator operator, List<COSBase> operands) throws IOException {
+				String operation = operator.getName();
+				if (isPathOperation(operation))
+					processPathOperation(operation, operands);
+				else if (!showingAnnotations || !isTextOperation(operation))
+					super.processOperator(operator, operands);
+			}
+
+			private void processPathOperation(String operation, List<COSBase> operands) {
+				Point2D current = linePath.getCurrentPoint();
+				if (operation.equals("m") && numbers(operands, 2))
+					moveTo(point(operands, 0));
+				else if (operation.equals("l") && numbers(operands, 2)) {
+					Point2D to = point(operands, 0);
+					if (current == null)
+						moveTo(to);
+					else {
+						if (to.getX() == current.getX() || to.getY() == current.getY())
+							addGridComponent("line", current, to);
+						lineTo(to);
 					}
-				}
+				} else if (operation.equals("c") && numbers(operands, 6))
+					curveTo(current, point(operands, 0), point(operands, 2), point(operands, 4));
+				else if (operation.equals("v") && numbers(operands, 4))
+					curveTo(current, current, point(operands, 0), point(operands, 2));
+				else if (operation.equals("y") && numbers(operands, 4))
+					curveTo(current, point(operands, 0), point(operands, 2), point(operands, 2));
+				else if (operation.equals("h")) {
+					if (current != null)
+						linePath.closePath();
+				} else if (operation.equals("re") && numbers(operands, 4))
+					appendRectangle((COSNumber) operands.get(0), (COSNumber) operands.get(1),
+							(COSNumber) operands.get(2), (COSNumber) operands.get(3));
+				else if (isPathPaintingOperation(operation))
+					linePath.reset();
+			}
+
+			private void moveTo(Point2D point) {
+				linePath.moveTo((float) point.getX(), (float) point.getY());
+			}
+
+			private void lineTo(Point2D point) {
+				linePath.lineTo((float) point.getX(), (float) point.getY());
 			}
 
-			protected TextComponent joinTextComponents(TextComponent component1, String separatorCharacter,
-					TextComponent component2) {
-				return new TextComponent(component1.getText() + separatorCharacter + component2.getText(),
-						component1.getFromX(), min(component1.getFromY(), component2.getFromY()), component2.getToX(),
-						max(component1.getToY(), component2.getToY()), component1.getFontName(),
-						component1.getFontSize());
+			private void curveTo(Point2D current, Point2D point1, Point2D point2, Point2D point3) {
+				if (current == null)
+					moveTo(point3);
+				else
+					linePath.curveTo((float) point1.getX(), (float) point1.getY(), (float) point2.getX(),
+							(float) point2.getY(), (float) point3.getX(), (float) point3.getY());
+			}
+
+			private void appendRectangle(COSNumber x, COSNumber y, COSNumber w, COSNumber h) {
+				Point2D from = transformedPoint(x.floatValue(), y.floatValue());
+				Point2D to = transformedPoint(w.floatValue() + x.floatValue(), h.floatValue() + y.floatValue());
+				addGridComponent("rect", from, to);
+				moveTo(from);
+				lineTo(transformedPoint(w.floatValue() + x.floatValue(), y.floatValue()));
+				lineTo(to);
+				lineTo(transformedPoint(x.floatValue(), h.floatValue() + y.floatValue()));
+				linePath.closePath();
+			}
+
+			private Point2D point(List<COSBase> operands, int index) {
+				return transformedPoint(((COSNumber) operands.get(index)).floatValue(),
+						((COSNumber) operands.get(index + 1)).floatValue());
+			}
+
+			private boolean numbers(List<COSBase> operands, int count) {
+				if (operands.size() < count)
+					return false;
+				for (int i = 0; i < count; i++)
+					if (!(operands.get(i) instanceof COSNumber))
+						return false;
+				return true;
+			}
+
+			private void addGridComponent(String type, Point2D from, Point2D to) {
+				if (!locateGrids)
+					return;
+				float fromX = (float) min(from.getX(), to.getX());
+				float fromY = (float) min(adjustY(from.getY()), adjustY(to.getY()));
+				float toX = (float) max(from.getX(), to.getX());
+				float toY = (float) max(adjustY(from.getY()), adjustY(to.getY()));
+				gridComponents.add(new GridComponent(type, fromX, fromY, toX, toY, getGraphicsState().getLineWidth()));
+			}
+
+			private double adjustY(double y) {
+				return thePage.getBBox().getHeight() - y;
+			}
+
+			private boolean isPathOperation(String operation) {
+				return "/m/l/c/v/y/h/re/W/W*/".contains("/" + operation + "/") || isPathPaintingOperation(operation);
+			}
+
+			private boolean isPathPaintingOperation(String operation) {
+				return "/n/S/s/f/F/f*/B/B*/b/b*/".contains("/" + operation + "/");
+			}
+
+			private boolean isTextOperation(String operation) {
+				return "/BT/ET/T*/Tc/Td/TD/Tf/Tj/TJ/TL/Tm/Tr/Ts/Tw/Tz/'/\"/".contains("/" + operation + "/");
+			}
+
+			/**
+			 * Joins each text component with the following ones while they are
+			 * consecutive and no vertical separator crosses the joined text, in a
+			 * single pass that writes the joined components back to the list.
+			 */
+			protected void joinConsecutiveTexts(ArrayList<TextComponent> textComponents) {
+				if (textComponents.isEmpty())
+					return;
+				VerticalIndex separators = new VerticalIndex(verticalComponents);
+				int size = 0;
+				TextRun run = new TextRun(textComponents.get(0));
+				for (int i = 1; i < textComponents.size(); i++) {
+					TextComponent nextComponent = textComponents.get(i);
+					if (!run.consecutive(nextComponent, false) || !run.join(SPACE, nextComponent, separators)) {
+						textComponents.set(size++, run.toTextComponent());
+						run = new TextRun(nextComponent);
+					}
+				}
+				textComponents.set(size++, run.toTextComponent());
+				textComponents.subList(size, textComponents.size()).clear();
 			}
 
 			@Override
 			protected void writeString(String text, List<TextPosition> textPositions) throws IOException {
+				int start = 0;
+				do
+					start = writeRun(textPositions, start);
+				while (start < textPositions.size());
+			}
+
+			/**
+			 * Adds the text component formed by the glyphs from the given
+			 * position until one is placed before the previous one. Glyphs fused
+			 * with the previous one are not counted, so the next run starts right
+			 * after the glyphs appended to this one.
+			 *
+			 * @return position where the next run starts
+			 */
+			private int writeRun(List<TextPosition> textPositions, int start) {
 				float fromX = Float.POSITIVE_INFINITY;
 				float fromY = Float.POSITIVE_INFINITY;
 				float toX = Float.NEGATIVE_INFINITY;
 				float toY = Float.NEGATIVE_INFINITY;
 				float fontSize = -1;
 				String fontName = "";
-				List<TextPosition> partialList = new ArrayList<TextPosition>();
-				String partialText = "";
+				int appended = 0;
+				runText.setLength(0);
 				float lastLeft = Float.NEGATIVE_INFINITY;
 				float lastRight = Float.NEGATIVE_INFINITY;
-				for (TextPosition textPosition : textPositions) {
-					String character = textPosition.getUnicode();
-					Component overlappingShape = findOverlappingHorizontalShape(textPosition);
-					if (overlappingShape != null && (character.endsWith(SPACE) || fusible(character, "-"))) {
-						character = fusion(character, "-");
-						removeOverlappingShape(overlappingShape);
+				for (int index = start; index < textPositions.size(); index++) {
+					TextPosition textPosition = textPositions.get(index);
+					String unicode = textPosition.getUnicode();
+					int length = unicode.length();
+					char last = length == 0 ? 0 : unicode.charAt(length - 1);
+					if (length > 0 && (last == ' ' || fused(last, '-') != 0)) {
+						int overlappingShape = findOverlappingHorizontalShape(textPosition);
+						if (overlappingShape >= 0) {
+							last = last == ' ' ? '-' : fused(last, '-');
+							removeOverlappingShape(overlappingShape);
+						}
 					}
+					char first = length > 1 ? unicode.charAt(0) : last;
 					float x1 = textPosition.getX();
 					float y1 = textPosition.getY();
 					if (x1 < lastLeft) {
-						list.add(new TextComponent(partialText, fromX, fromY, toX, toY, fontName, fontSize));
-						writeString(text.substring(partialText.length()),
-								textPositions.subList(partialList.size(), textPositions.size()));
-						return;
-					} else if (x1 < lastRight && fusible(partialText, character) && fontsz(textPosition) < fontSize)
-						partialText = fusion(partialText, character);
-					else if (x1 + textPosition.getWidth() * 0.2 < lastRight && partialText.endsWith(SPACE))
-						partialText = fusion(partialText, character);
-					else {
+						list.add(new TextComponent(runText.toString(), fromX, fromY, toX, toY, fontName, fontSize));
+						return start + appended;
+					} else if (x1 < lastRight && length > 0 && endsWithFusible(first)
+							&& fontsz(textPosition) < fontSize)
+						runText.setCharAt(runText.length() - 1, fused(runText.charAt(runText.length() - 1), first));
+					else if (x1 + textPosition.getWidth() * 0.2 < lastRight && endsWith(' ')) {
+						if (length != 1 || last != ' ') {
+							runText.setLength(runText.length() - 1);
+							append(unicode, last);
+						}
+					} else {
 						if (x1 < fromX) {
 							fromX = x1;
 							fromY = y1 - textPosition.getHeight();
 							fontName = textPosition.getFont().getName();
 							fontSize = fontsz(textPosition);
 						}
-						partialList.add(textPosition);
-						partialText += character;
+						appended++;
+						append(unicode, last);
 					}
 					toX = max(x1 + textPosition.getWidth(), toX);
 					toY = max(y1, toY);
 					lastLeft = x1;
 					lastRight = x1 + textPosition.getWidth();
 				}
-				list.add(new TextComponent(partialText, fromX, fromY, toX, toY, fontName, fontSize));
+				list.add(new TextComponent(runText.toString(), fromX, fromY, toX, toY, fontName, fontSize));
+				return textPositions.size();
 			}
 
-			private float fontsz(TextPosition textPosition) {
-				return textPosition.getFontSize() == 1F ? textPosition.getFontSizeInPt()
-						: (int) textPosition.getFontSize();
+			/**
+			 * Appends the glyph text with its last character replaced.
+			 */
+			private void append(String unicode, char last) {
+				if (unicode.isEmpty())
+					return;
+				runText.append(unicode, 0, unicode.length() - 1).append(last);
+			}
+
+			private boolean endsWith(char character) {
+				return runText.length() > 0 && runText.charAt(runText.length() - 1) == character;
 			}
 
-			private Component findOverlappingHorizontalShape(TextPosition textPosition) {
-				GridComponent component = new GridComponent("rect", textPosition.getX(),
-						textPosition.getY() - textPosition.getHeight(), textPosition.getX() + textPosition.getWidth(),
-						textPosition.getY(), 1);
-				for (Component candidate : horizontalComponents)
-					if (candidate.underlineOf(component) && abs(candidate.getWidth() - component.getWidth()) < 0.1)
-						return candidate;
-				return null;
+			private boolean endsWithFusible(char character) {
+				return runText.length() > 0 && fused(runText.charAt(runText.length() - 1), character) != 0;
 			}
 
-			private void removeOverlappingShape(Component overlappingShape) throws IOException {
-				gridComponents.remove(overlappingShape);
+			private float fontsz(TextPosition textPosition) {
+				return textPosition.getFontSize() == 1F ? textPosition.getFontSizeInPt()
+						: (int) textPosition.getFontSize();
 			}
 
-			private boolean fusible(String partialText, String character) {
-				return fusions.containsKey(fusionPair(partialText, character));
+			private int findOverlappingHorizontalShape(TextPosition textPosition) {
+				return underlines.find(textPosition.getX(), textPosition.getY() - textPosition.getHeight(),
+						textPosition.getX() + textPosition.getWidth(), textPosition.getY());
 			}
 
-			private String fusion(String partialText, String character) {
-				if (character.equals(SPACE))
-					return partialText;
-				if (partialText.endsWith(SPACE))
-					return partialText.substring(0, partialText.length() - 1) + character;
-				return partialText.substring(0, partialText.length() - 1)
-						+ fusions.get(fusionPair(partialText, character));
+			/**
+			 * The shape is removed from the grid components once the page is
+			 * read.
+			 */
+			private void removeOverlappingShape(int overlappingShape) {
+				underlines.mark(overlappingShape);
 			}
 
-			private String fusionPair(String partialText, String character) {
-				return partialText.substring(partialText.length() - 1) + character.charAt(0);
+			/**
+			 * Character replacing the given pair of characters, or 0 when they
+			 * are not fused.
+			 */
+			private char fused(char previous, char next) {
+				for (char[] fusion : FUSIONS)
+					if (fusion[0] == previous && fusion[1] == next)
+						return fusion[2];
+				return 0;
 			}
 		}.locateTextComponents();
 	}
+
+	/**
+	 * Text components being joined, whose text is only built when the run
+	 * ends.
+	 */
+	private static class TextRun extends TextComponent {
+		private TextComponent first;
+		private StringBuilder text;
+
+		public TextRun(TextComponent first) {
+			super(first.getText(), first.getFromX(), first.getFromY(), first.getToX(), first.getToY(),
+					first.getFontName(), first.getFontSize());
+			this.first = first;
+		}
+
+		@Override
+		public String getText() {
+			return text == null ? first.getText() : text.toString();
+		}
+
+		@Override
+		public float getAverageCharacterWidth() {
+			return getWidth() / (text == null ? first.getText().length() : text.length());
+		}
+
+		/**
+		 * Extends the run to the given component unless a separator crosses the
+		 * joined text without containing it.
+		 */
+		public boolean join(String separatorCharacter, TextComponent component, VerticalIndex separators) {
+			float previousFromY = fromY;
+			float previousToX = toX;
+			float previousToY = toY;
+			fromY = min(fromY, component.getFromY());
+			toX = component.getToX();
+			toY = max(toY, component.getToY());
+			for (Component separator : separators.intersecting(this))
+				if (!separator.contains(this)) {
+					fromY = previousFromY;
+					toX = previousToX;
+					toY = previousToY;
+					return false;
+				}
+			if (text == null)
+				text = new StringBuilder(first.getText());
+			text.append(separatorCharacter).append(component.getText());
+			return true;
+		}
+
+		public TextComponent toTextComponent() {
+			if (text == null)
+				return first;
+			return new TextComponent(text.toString(), fromX, fromY, toX, toY, getFontName(), getFontSize());
+		}
+	}
+
+	/**
+	 * Components found in a pass over the content stream of a page, with the
+	 * grid components marked as underlines still in the list.
+	 */
+	private static class Pass {
+		private List<GridComponent> gridComponents;
+		private List<TextComponent> textComponents;
+		private UnderlineIndex underlines;
+
+		public Pass(List<GridComponent> gridComponents, List<TextComponent> textComponents,
+				UnderlineIndex underlines) {
+			this.gridComponents = gridComponents;
+			this.textComponents = textComponents;
+			this.underlines = underlines;
+		}
+	}
+
+	/**
+	 * Page of a document that does not keep the document reachable. A key
+	 * whose document was collected is only equal to itself.
+	 */
+	private static class PageKey extends WeakReference<PDDocument> {
+		private int index;
+		private int hashCode;
+
+		public PageKey(PDFPage page, ReferenceQueue<PDDocument> queue) {
+			super(page.getDoc(), queue);
+			index = page.getIndex();
+			hashCode = page.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj == this)
+				return true;
+			if (!(obj instanceof PageKey))
+				return false;
+			PageKey other = (PageKey) obj;
+			PDDocument doc = get();
+			return doc != null && doc == other.get() && index == other.index;
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+	}
+
+	private static class LocatedComponents {
+		private List<GridComponent> gridComponents;
+		private List<TextComponent> textComponents;
+
+		public LocatedComponents(List<GridComponent> gridComponents, List<TextComponent> textComponents) {
+			this.gridComponents = gridComponents;
+			this.textComponents = textComponents;
+		}
+	}
 }
@@ -0,0 +1,110 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans.impl;
+
+import static java.lang.Math.abs;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import edworld.pdfreader4humans.Component;
+import edworld.pdfreader4humans.TextComponent;
+
+/**
+ * Index over horizontal components in any order, finding the first one that
+ * underlines a glyph with nearly the same width as it. The components are
+ * sorted by their bottom, so only those ending right below the glyph are
+ * checked, and the glyph is given by its coordinates so that no object is
+ * created for it.
+ */
+class UnderlineIndex {
+	private List<? extends Component> components;
+	private int[] order;
+	private float[] toYs;
+	private int sortedCount;
+	private boolean[] removed;
+	private int removedCount;
+
+	public UnderlineIndex(final List<? extends Component> components) {
+		this.components = components;
+		int size = components.size();
+		Integer[] sorted = new Integer[size];
+		for (int index = 0; index < size; index++)
+			sorted[index] = index;
+		Arrays.sort(sorted, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer index1, Integer index2) {
+				return Float.compare(components.get(index1).getToY(), components.get(index2).getToY());
+			}
+		});
+		order = new int[size];
+		toYs = new float[size];
+		for (int position = 0; position < size; position++) {
+			order[position] = sorted[position];
+			toYs[position] = components.get(order[position]).getToY();
+		}
+		sortedCount = size;
+		while (sortedCount > 0 && Float.isNaN(toYs[sortedCount - 1]))
+			sortedCount--;
+		removed = new boolean[size];
+	}
+
+	/**
+	 * Position in the list of the first component for which
+	 * {@link Component#underlineOf} holds for a glyph with the given bounds
+	 * and whose width differs from the glyph's by less than 0.1, or -1.
+	 */
+	public int find(float fromX, float fromY, float toX, float toY) {
+		float tolerance = TextComponent.getUnderlineTolerance();
+		int position = 0;
+		int high = sortedCount;
+		while (position < high) {
+			int middle = (position + high) >>> 1;
+			if (toYs[middle] > fromY)
+				high = middle;
+			else
+				position = middle + 1;
+		}
+		float width = toX - fromX;
+		int found = -1;
+		for (; position < sortedCount && toYs[position] - toY <= tolerance; position++) {
+			int index = order[position];
+			Component candidate = components.get(index);
+			if ((found < 0 || index < found) && candidate.getFromX() <= toX && candidate.getToX() >= fromX
+					&& abs(candidate.getWidth() - width) < 0.1)
+				found = index;
+		}
+		return found;
+	}
+
+	/**
+	 * Marks the component at the given position to be removed by
+	 * {@link #removeMarked(List)}; it is still found by later searches.
+	 */
+	public void mark(int index) {
+		if (!removed[index]) {
+			removed[index] = true;
+			removedCount++;
+		}
+	}
+
+	/**
+	 * Removes the marked components from the given list in a single pass.
+	 */
+	public void removeMarked(List<? extends Component> list) {
+		if (removedCount == 0)
+			return;
+		Set<Component> marked = Collections.newSetFromMap(new IdentityHashMap<Component, Boolean>());
+		for (int index = 0; index < removed.length; index++)
+			if (removed[index])
+				marked.add(components.get(index));
+		Iterator<? extends Component> iterator = list.iterator();
+		while (iterator.hasNext())
+			if (marked.contains(iterator.next()))
+				iterator.remove();
+	}
+}
@@ -0,0 +1,252 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans.impl;
+
+import static edworld.pdfreader4humans.impl.HorizontalIndex.notNaN;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edworld.pdfreader4humans.Component;
+import edworld.pdfreader4humans.GridComponent;
+
+/**
+ * Index over vertical components sorted by {@link Component#orderByXY()}. It
+ * finds the components crossed by a horizontal one through a segment tree of
+ * extents, and follows vertical extensions inside groups of components with
+ * the same horizontal position, remembering the end of every chain.
+ */
+class VerticalIndex {
+	private List<Component> components;
+	private int sortedCount;
+	private float[] maxToX;
+	private float[] minFromY;
+	private float[] maxToY;
+	private Map<Long, Column> columns = new HashMap<Long, Column>();
+	private float[] tops;
+	private float[] bottoms;
+	private boolean[] knownTops;
+	private boolean[] knownBottoms;
+
+	public VerticalIndex(List<Component> components) {
+		this.components = components;
+		int size = components.size();
+		sortedCount = size;
+		while (sortedCount > 0 && Float.isNaN(components.get(sortedCount - 1).getFromX()))
+			sortedCount--;
+		maxToX = new float[4 * max(1, size)];
+		minFromY = new float[4 * max(1, size)];
+		maxToY = new float[4 * max(1, size)];
+		if (size > 0)
+			build(1, 0, size);
+		for (int index = 0; index < size; index++) {
+			Component component = components.get(index);
+			if (Float.isNaN(component.getFromX()) || Float.isNaN(component.getToX()))
+				continue;
+			Long key = key(component.getFromX(), component.getToX());
+			if (!columns.containsKey(key))
+				columns.put(key, new Column());
+			columns.get(key).indexes.add(index);
+		}
+		for (Column column : columns.values())
+			column.prepare();
+		tops = new float[size];
+		bottoms = new float[size];
+		knownTops = new boolean[size];
+		knownBottoms = new boolean[size];
+	}
+
+	private void build(int node, int from, int to) {
+		if (to - from == 1) {
+			Component component = components.get(from);
+			maxToX[node] = notNaN(component.getToX(), Float.NEGATIVE_INFINITY);
+			minFromY[node] = notNaN(component.getFromY(), Float.POSITIVE_INFINITY);
+			maxToY[node] = notNaN(component.getToY(), Float.NEGATIVE_INFINITY);
+			return;
+		}
+		int middle = (from + to) >>> 1;
+		build(2 * node, from, middle);
+		build(2 * node + 1, middle, to);
+		maxToX[node] = max(maxToX[2 * node], maxToX[2 * node + 1]);
+		minFromY[node] = min(minFromY[2 * node], minFromY[2 * node + 1]);
+		maxToY[node] = max(maxToY[2 * node], maxToY[2 * node + 1]);
+	}
+
+	/**
+	 * Components intersecting the given one, in the order of the list.
+	 */
+	public List<GridComponent> intersecting(Component component) {
+		int end = 0;
+		int high = sortedCount;
+		while (end < high) {
+			int middle = (end + high) >>> 1;
+			if (components.get(middle).getFromX() > component.getToX())
+				high = middle;
+			else
+				end = middle + 1;
+		}
+		List<GridComponent> intersecting = new ArrayList<GridComponent>();
+		if (end > 0)
+			collect(1, 0, components.size(), end, component, intersecting);
+		return intersecting;
+	}
+
+	private void collect(int node, int from, int to, int end, Component component, List<GridComponent> intersecting) {
+		if (from >= end || !(maxToX[node] >= component.getFromX() && minFromY[node] <= component.getToY() && maxToY[node] >= component.getFromY()))
+			return;
+		if (to - from == 1) {
+			if (component.intersects(components.get(from)))
+				intersecting.add((GridComponent) components.get(from));
+			return;
+		}
+		int middle = (from + to) >>> 1;
+		collect(2 * node, from, middle, end, component, intersecting);
+		collect(2 * node + 1, middle, to, end, component, intersecting);
+	}
+
+	/**
+	 * Top of the component after following its upper vertical extensions.
+	 */
+	public float transitiveTop(Component component) {
+		int next = nextUpperExtension(component);
+		return next < 0 ? component.getFromY() : chainEnd(next, true);
+	}
+
+	/**
+	 * Bottom of the component after following its lower vertical extensions.
+	 */
+	public float transitiveBottom(Component component) {
+		int next = nextLowerExtension(component);
+		return next < 0 ? component.getToY() : chainEnd(next, false);
+	}
+
+	private float chainEnd(int index, boolean upper) {
+		float[] ends = upper ? tops : bottoms;
+		boolean[] known = upper ? knownTops : knownBottoms;
+		List<Integer> chain = new ArrayList<Integer>();
+		float end;
+		while (true) {
+			if (known[index]) {
+				end = ends[index];
+				break;
+			}
+			chain.add(index);
+			Component component = components.get(index);
+			int next = upper ? nextUpperExtension(component) : nextLowerExtension(component);
+			if (next < 0) {
+				end = upper ? component.getFromY() : component.getToY();
+				break;
+			}
+			index = next;
+		}
+		for (int chainIndex : chain) {
+			ends[chainIndex] = end;
+			known[chainIndex] = true;
+		}
+		return end;
+	}
+
+	private int nextUpperExtension(Component component) {
+		int found = -1;
+		for (Column column : columnsOf(component)) {
+			int index = column.nextUpper(component);
+			if (index >= 0 && (found < 0 || index < found))
+				found = index;
+		}
+		return found;
+	}
+
+	private int nextLowerExtension(Component component) {
+		int found = -1;
+		for (Column column : columnsOf(component)) {
+			int index = column.nextLower(component);
+			if (index >= 0 && (found < 0 || index < found))
+				found = index;
+		}
+		return found;
+	}
+
+	private List<Column> columnsOf(Component component) {
+		List<Column> result = new ArrayList<Column>(2);
+		if (Float.isNaN(component.getFromX()) || Float.isNaN(component.getToX()))
+			return result;
+		// 0.0 and -0.0 are equal but sorted apart, so they have separate columns
+		float[] fromXs = component.getFromX() == 0 ? new float[] { 0.0f, -0.0f } : new float[] { component.getFromX() };
+		for (float fromX : fromXs) {
+			Column column = columns.get(key(fromX, component.getToX()));
+			if (column != null)
+				result.add(column);
+		}
+		return result;
+	}
+
+	private static Long key(float fromX, float toX) {
+		return ((long) Float.floatToRawIntBits(fromX) << 32) | (Float.floatToIntBits(toX + 0.0f) & 0xffffffffL);
+	}
+
+	/**
+	 * Components with the same horizontal position, sorted by fromY as in the
+	 * list.
+	 */
+	private class Column {
+		private List<Integer> indexes = new ArrayList<Integer>();
+		private float[] maxToY;
+
+		private void prepare() {
+			maxToY = new float[indexes.size()];
+			float toY = Float.NEGATIVE_INFINITY;
+			for (int position = 0; position < indexes.size(); position++) {
+				toY = max(toY, notNaN(get(position).getToY(), Float.NEGATIVE_INFINITY));
+				maxToY[position] = toY;
+			}
+		}
+
+		private Component get(int position) {
+			return components.get(indexes.get(position));
+		}
+
+		private int nextUpper(Component component) {
+			int end = 0;
+			int high = indexes.size();
+			while (end < high) {
+				int middle = (end + high) >>> 1;
+				Component candidate = get(middle);
+				if (candidate.getFromY() < component.getFromY() && candidate.getFromY() <= component.getToY())
+					end = middle + 1;
+				else
+					high = middle;
+			}
+			int position = 0;
+			high = end;
+			while (position < high) {
+				int middle = (position + high) >>> 1;
+				if (maxToY[middle] >= component.getFromY())
+					high = middle;
+				else
+					position = middle + 1;
+			}
+			if (position < end && component.verticalExtension(get(position)))
+				return indexes.get(position);
+			return -1;
+		}
+
+		private int nextLower(Component component) {
+			int position = 0;
+			int high = indexes.size();
+			while (position < high) {
+				int middle = (position + high) >>> 1;
+				if (get(middle).getFromY() <= component.getFromY())
+					position = middle + 1;
+				else
+					high = middle;
+			}
+			for (; position < indexes.size() && get(position).getFromY() <= component.getToY(); position++)
+				if (component.verticalExtension(get(position)) && get(position).getFromY() > component.getFromY())
+					return indexes.get(position);
+			return -1;
+		}
+	}
+}
@@ -0,0 +1,135 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans.util;
+
+import static java.lang.Math.min;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+import org.apache.pdfbox.io.RandomAccessRead;
+
+/**
+ * Source of a document read from a file channel mapped into memory, in chunks
+ * since a single mapping is limited to 2 GB.
+ */
+class MappedRandomAccessRead implements RandomAccessRead {
+	private static final int CHUNK_SIZE = 1 << 30;
+	private MappedByteBuffer[] chunks;
+	private long length;
+	private long position;
+
+	public MappedRandomAccessRead(FileChannel channel) throws IOException {
+		length = channel.size();
+		chunks = new MappedByteBuffer[(int) ((length + CHUNK_SIZE - 1) / CHUNK_SIZE)];
+		for (int chunk = 0; chunk < chunks.length; chunk++) {
+			long start = (long) chunk * CHUNK_SIZE;
+			chunks[chunk] = channel.map(MapMode.READ_ONLY, start, min(CHUNK_SIZE, length - start));
+		}
+	}
+
+	@Override
+	public int read() throws IOException {
+		checkClosed();
+		if (position >= length)
+			return -1;
+		int value = chunks[(int) (position / CHUNK_SIZE)].get((int) (position % CHUNK_SIZE)) & 0xFF;
+		position++;
+		return value;
+	}
+
+	@Override
+	public int read(byte[] bytes) throws IOException {
+		return read(bytes, 0, bytes.length);
+	}
+
+	@Override
+	public int read(byte[] bytes, int offset, int count) throws IOException {
+		checkClosed();
+		if (count == 0)
+			return 0;
+		if (position >= length)
+			return -1;
+		int total = (int) min(count, length - position);
+		int done = 0;
+		while (done < total) {
+			ByteBuffer chunk = chunks[(int) (position / CHUNK_SIZE)].duplicate();
+			chunk.position((int) (position % CHUNK_SIZE));
+			int part = min(total - done, chunk.remaining());
+			chunk.get(bytes, offset + done, part);
+			done += part;
+			position += part;
+		}
+		return total;
+	}
+
+	@Override
+	public long getPosition() throws IOException {
+		checkClosed();
+		return position;
+	}
+
+	@Override
+	public void seek(long newPosition) throws IOException {
+		checkClosed();
+		if (newPosition < 0)
+			throw new IOException("Invalid position " + newPosition);
+		position = min(newPosition, length);
+	}
+
+	@Override
+	public long length() throws IOException {
+		checkClosed();
+		return length;
+	}
+
+	@Override
+	public boolean isClosed() {
+		return chunks == null;
+	}
+
+	@Override
+	public int peek() throws IOException {
+		int value = read();
+		if (value != -1)
+			position--;
+		return value;
+	}
+
+	@Override
+	public void rewind(int bytes) throws IOException {
+		seek(position - bytes);
+	}
+
+	@Override
+	public byte[] readFully(int count) throws IOException {
+		byte[] bytes = new byte[count];
+		if (count > 0 && read(bytes, 0, count) < count)
+			throw new EOFException("Premature end of file");
+		return bytes;
+	}
+
+	@Override
+	public boolean isEOF() throws IOException {
+		return peek() == -1;
+	}
+
+	@Override
+	public int available() throws IOException {
+		checkClosed();
+		return (int) min(length - position, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public void close() throws IOException {
+		chunks = null;
+	}
+
+	private void checkClosed() throws IOException {
+		if (chunks == null)
+			throw new IOException("The mapped file is already closed");
+	}
+}
@@ -1,19 +1,94 @@
 // This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
 package edworld.pdfreader4humans.util;
 
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
 
+import org.apache.commons.io.FileUtils;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.io.RandomAccessRead;
+import org.apache.pdfbox.io.ScratchFile;
+import org.apache.pdfbox.pdfparser.PDFParser;
 import org.apache.pdfbox.pdmodel.PDDocument;
 
 public class PDFUtil {
+	private static volatile long maxMainMemoryBytes = -1;
+
+	/**
+	 * Limits the memory PDFBox uses for the streams it decodes while a document
+	 * is open; beyond it they are kept in a scratch file.
+	 *
+	 * @param bytes
+	 *            maximum number of bytes kept in memory per document, or -1 to
+	 *            keep everything in memory (the default)
+	 */
+	public static void setMaxMainMemoryBytes(long bytes) {
+		maxMainMemoryBytes = bytes;
+	}
+
+	public static long getMaxMainMemoryBytes() {
+		return maxMainMemoryBytes;
+	}
+
+	/**
+	 * Loads a document from a URL. Local files are read directly from disk;
+	 * other URLs are first copied to a temporary file, so the document is
+	 * never buffered in memory as a whole.
+	 */
 	public static PDDocument load(URL url) throws IOException {
-		InputStream input = url.openStream();
+		File file = FileUtils.toFile(url);
+		if (file != null)
+			return load(file);
+		File spool = File.createTempFile("pdfreader4humans", ".pdf");
 		try {
-			return PDDocument.load(input);
+			FileUtils.copyURLToFile(url, spool);
+			return load(spool);
 		} finally {
-			input.close();
+			// the open document keeps reading the file where the system allows
+			// deleting it while it is open
+			if (!spool.delete())
+				spool.deleteOnExit();
 		}
 	}
+
+	/**
+	 * Loads a document reading the file by random access as its objects are
+	 * needed.
+	 */
+	public static PDDocument load(File file) throws IOException {
+		return PDDocument.load(file, memoryUsageSetting());
+	}
+
+	public static PDDocument load(Path path) throws IOException {
+		return load(path.toFile());
+	}
+
+	/**
+	 * Loads a document from a memory-mapped channel. The channel may be closed
+	 * once the document is loaded.
+	 */
+	public static PDDocument load(FileChannel channel) throws IOException {
+		return load(new MappedRandomAccessRead(channel));
+	}
+
+	private static PDDocument load(RandomAccessRead source) throws IOException {
+		ScratchFile scratchFile = new ScratchFile(memoryUsageSetting());
+		try {
+			PDFParser parser = new PDFParser(source, scratchFile);
+			parser.parse();
+			return parser.getPDDocument();
+		} catch (IOException e) {
+			scratchFile.close();
+			source.close();
+			throw e;
+		}
+	}
+
+	private static MemoryUsageSetting memoryUsageSetting() {
+		long bytes = maxMainMemoryBytes;
+		return bytes < 0 ? MemoryUsageSetting.setupMainMemoryOnly() : MemoryUsageSetting.setupMixed(bytes);
+	}
 }
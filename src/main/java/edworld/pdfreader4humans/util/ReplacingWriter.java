@@ -0,0 +1,81 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans.util;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writer that replaces every occurrence of a target text while the characters
+ * are written, with the same results as {@link String#replace}.
+ */
+public class ReplacingWriter extends FilterWriter {
+	private String target;
+	private String replacement;
+	private int[] borders;
+	private int matched;
+
+	public ReplacingWriter(Writer out, String target, String replacement) {
+		super(out);
+		this.target = target;
+		this.replacement = replacement;
+		borders = borders(target);
+	}
+
+	@Override
+	public void write(int c) throws IOException {
+		while (matched > 0 && target.charAt(matched) != c) {
+			out.write(target, 0, matched - borders[matched - 1]);
+			matched = borders[matched - 1];
+		}
+		if (target.charAt(matched) == c) {
+			matched++;
+			if (matched == target.length()) {
+				out.write(replacement);
+				matched = 0;
+			}
+		} else
+			out.write(c);
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		for (int i = off; i < off + len; i++)
+			write(cbuf[i]);
+	}
+
+	@Override
+	public void write(String str, int off, int len) throws IOException {
+		for (int i = off; i < off + len; i++)
+			write(str.charAt(i));
+	}
+
+	/**
+	 * Writes the characters held back as a possible beginning of the target
+	 * text, without closing the underlying writer.
+	 */
+	public void finish() throws IOException {
+		out.write(target, 0, matched);
+		matched = 0;
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		finish();
+		out.close();
+	}
+
+	private static int[] borders(String text) {
+		int[] borders = new int[text.length()];
+		int border = 0;
+		for (int i = 1; i < text.length(); i++) {
+			while (border > 0 && text.charAt(i) != text.charAt(border))
+				border = borders[border - 1];
+			if (text.charAt(i) == text.charAt(border))
+				border++;
+			borders[i] = border;
+		}
+		return borders;
+	}
+}
@@ -0,0 +1,113 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans.util;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Template parsed once into literal and ${field} segments. Each line is
+ * indented with tabs when rendered, except a line holding only ${content},
+ * which is written as is.
+ */
+public class Template {
+	public static final String CONTENT = "content";
+	private static final String LINE_BREAK = System.getProperty("line.separator");
+	private static final String TABS = "\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t";
+	private String text;
+	private List<Line> lines = new ArrayList<Line>();
+
+	public Template(String text) {
+		this.text = text;
+		try {
+			for (String line : IOUtils.readLines(new StringReader(text)))
+				lines.add(new Line(line));
+		} catch (IOException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+
+	public String getText() {
+		return text;
+	}
+
+	public void render(int indentLevel, TemplateFields fields, Writer writer) throws IOException {
+		for (Line line : lines) {
+			if (line.indented)
+				indent(indentLevel, writer);
+			for (int i = 0; i < line.segments.length; i++)
+				if (i % 2 == 0)
+					writer.write(line.segments[i]);
+				else if (!fields.writeField(line.segments[i], writer))
+					writer.write(line.placeholders[i]);
+			if (line.indented)
+				writer.write(LINE_BREAK);
+		}
+	}
+
+	/**
+	 * Fills the fields found in a text, keeping its lines as they are.
+	 */
+	public static String fill(String text, TemplateFields fields) {
+		StringWriter writer = new StringWriter();
+		try {
+			String[] segments = segments(text);
+			for (int i = 0; i < segments.length; i++)
+				if (i % 2 == 0)
+					writer.write(segments[i]);
+				else if (!fields.writeField(segments[i], writer))
+					writer.write(placeholder(segments[i]));
+		} catch (IOException e) {
+			throw new IllegalArgumentException(e);
+		}
+		return writer.toString();
+	}
+
+	private void indent(int indentLevel, Writer writer) throws IOException {
+		for (int level = indentLevel; level > 0; level -= TABS.length())
+			writer.write(TABS, 0, Math.min(level, TABS.length()));
+	}
+
+	private static class Line {
+		private boolean indented;
+		private String[] segments;
+		private String[] placeholders;
+
+		public Line(String line) {
+			indented = !line.equals(placeholder(CONTENT));
+			segments = segments(line);
+			placeholders = new String[segments.length];
+			for (int i = 1; i < segments.length; i += 2)
+				placeholders[i] = placeholder(segments[i]);
+		}
+	}
+
+	/**
+	 * @return the literal texts at even positions and the field names at odd
+	 *         positions
+	 */
+	private static String[] segments(String text) {
+		List<String> list = new ArrayList<String>();
+		int start = 0;
+		int fieldStart = text.indexOf("${");
+		int fieldEnd = fieldStart < 0 ? -1 : text.indexOf('}', fieldStart);
+		while (fieldStart >= 0 && fieldEnd >= 0) {
+			list.add(text.substring(start, fieldStart));
+			list.add(text.substring(fieldStart + 2, fieldEnd));
+			start = fieldEnd + 1;
+			fieldStart = text.indexOf("${", start);
+			fieldEnd = fieldStart < 0 ? -1 : text.indexOf('}', fieldStart);
+		}
+		list.add(text.substring(start));
+		return list.toArray(new String[list.size()]);
+	}
+
+	private static String placeholder(String fieldName) {
+		return "${" + fieldName + "}";
+	}
+}
@@ -0,0 +1,14 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans.util;
+
+import java.io.IOException;
+import java.io.Writer;
+
+public interface TemplateFields {
+	/**
+	 * Writes the value of a template field.
+	 * 
+	 * @return false if the field is unknown, so the placeholder is kept
+	 */
+	boolean writeField(String fieldName, Writer writer) throws IOException;
+}
@@ -0,0 +1,64 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Test;
+
+import edworld.pdfreader4humans.impl.MainBoxDetector;
+import edworld.pdfreader4humans.impl.MainMarginDetector;
+import edworld.pdfreader4humans.impl.MainPDFComponentLocator;
+
+public class BinaryComponentReaderTest {
+	@Test
+	public void readPages() throws IOException {
+		for (int testcase = 1; testcase <= 8; testcase++) {
+			PDFReader reader = new PDFReader(getClass().getResource("/testcase" + testcase + "/input.pdf"),
+					new MainPDFComponentLocator(), new MainBoxDetector(), new MainMarginDetector(),
+					testcase == 8 ? 0.5F : 0);
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			reader.toBinary(output);
+			BinaryComponentReader binaryReader = new BinaryComponentReader(
+					new ByteArrayInputStream(output.toByteArray()));
+			for (int pageNumber = 1; pageNumber <= reader.getNumberOfPages(); pageNumber++)
+				assertEquals(describe(reader.getFirstLevelComponents(pageNumber)), describe(binaryReader.readPage()));
+			assertNull(binaryReader.readPage());
+		}
+	}
+
+	@Test
+	public void walkComponents() throws IOException {
+		PDFReader reader = new PDFReader(getClass().getResource("/testcase1/input.pdf"),
+				new MainPDFComponentLocator(), new MainBoxDetector(), new MainMarginDetector());
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		reader.toBinary(output);
+		BinaryComponentReader binaryReader = new BinaryComponentReader(new ByteArrayInputStream(output.toByteArray()));
+		StringBuilder description = new StringBuilder();
+		for (int event = binaryReader.next(); event != BinaryComponentReader.END_DOCUMENT; event = binaryReader.next())
+			if (event == BinaryComponentReader.START_COMPONENT)
+				description.append(binaryReader.getType()).append(' ').append(binaryReader.getFromX()).append('\n');
+		StringBuilder expected = new StringBuilder();
+		for (Component component : reader.getFirstLevelComponents(1))
+			describeTypeAndPosition(component, expected);
+		assertEquals(expected.toString(), description.toString());
+	}
+
+	private String describe(List<Component> components) {
+		StringBuilder description = new StringBuilder();
+		for (Component component : components)
+			description.append(component).append(" [").append(describe(component.getChildren())).append("]\n");
+		return description.toString();
+	}
+
+	private void describeTypeAndPosition(Component component, StringBuilder description) {
+		description.append(component.getType()).append(' ').append(component.getFromX()).append('\n');
+		for (Component child : component.getChildren())
+			describeTypeAndPosition(child, description);
+	}
+}
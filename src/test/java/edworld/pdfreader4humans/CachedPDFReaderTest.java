@@ -0,0 +1,118 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans;
+
+import static java.lang.System.getProperty;
+import static org.apache.commons.io.FileUtils.readFileToString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import edworld.pdfreader4humans.impl.MainBoxDetector;
+import edworld.pdfreader4humans.impl.MainMarginDetector;
+import edworld.pdfreader4humans.impl.MainPDFComponentLocator;
+
+public class CachedPDFReaderTest {
+	@Rule
+	public TemporaryFolder cacheDirectory = new TemporaryFolder();
+
+	@Test
+	public void readPagesFromCache() throws IOException {
+		URL input = getClass().getResource("/testcase6/input.pdf");
+		String expected = readFileToString(new File(getClass().getResource("/testcase6/output.xml").getFile()),
+				"UTF-8").replaceAll("\r?\n", getProperty("line.separator"));
+		MainPDFComponentLocator firstLocator = new MainPDFComponentLocator();
+		assertEquals(expected, new CachedPDFReader(input, firstLocator, new MainBoxDetector(),
+				new MainMarginDetector(), 0, cacheDirectory.getRoot()).toXML());
+		assertEquals(14, firstLocator.getMissCount());
+		MainPDFComponentLocator secondLocator = new MainPDFComponentLocator();
+		PDFReader reader = new CachedPDFReader(input, secondLocator, new MainBoxDetector(), new MainMarginDetector(),
+				0, cacheDirectory.getRoot());
+		assertEquals(expected, reader.toXML());
+		assertEquals(0, secondLocator.getMissCount());
+		PDFReader original = new PDFReader(input, new MainPDFComponentLocator(), new MainBoxDetector(),
+				new MainMarginDetector());
+		for (int pageNumber = 1; pageNumber <= reader.getNumberOfPages(); pageNumber++) {
+			assertEquals(original.getPageBox(pageNumber).getWidth(), reader.getPageBox(pageNumber).getWidth(), 0);
+			assertEquals(original.getPageBox(pageNumber).getHeight(), reader.getPageBox(pageNumber).getHeight(), 0);
+			assertEquals(original.getPageBox(pageNumber).getRotation(), reader.getPageBox(pageNumber).getRotation());
+		}
+	}
+
+	@Test
+	public void doNotShareCacheAmongDifferentSettings() throws IOException {
+		URL input = getClass().getResource("/testcase8/input.pdf");
+		new CachedPDFReader(input, new MainPDFComponentLocator(), new MainBoxDetector(), new MainMarginDetector(), 0,
+				cacheDirectory.getRoot());
+		MainPDFComponentLocator locator = new MainPDFComponentLocator();
+		PDFReader reader = new CachedPDFReader(input, locator, new MainBoxDetector(), new MainMarginDetector(), 0.5F,
+				cacheDirectory.getRoot());
+		assertEquals(10, locator.getMissCount());
+		assertEquals(new PDFReader(input, new MainPDFComponentLocator(), new MainBoxDetector(),
+				new MainMarginDetector(), 0.5F).toXML(), reader.toXML());
+	}
+
+	@Test
+	public void analysePagesAgainWhenCacheIsCorrupted() throws IOException {
+		URL input = getClass().getResource("/testcase8/input.pdf");
+		String expected = new CachedPDFReader(input, new MainPDFComponentLocator(), new MainBoxDetector(),
+				new MainMarginDetector(), 0, cacheDirectory.getRoot()).toXML();
+		File pageFile = cacheFile("-1");
+		RandomAccessFile truncated = new RandomAccessFile(pageFile, "rw");
+		try {
+			truncated.setLength(truncated.length() / 2);
+		} finally {
+			truncated.close();
+		}
+		MainPDFComponentLocator locator = new MainPDFComponentLocator();
+		assertEquals(expected, new CachedPDFReader(input, locator, new MainBoxDetector(), new MainMarginDetector(), 0,
+				cacheDirectory.getRoot()).toXML());
+		assertEquals(1, locator.getMissCount());
+		FileOutputStream corrupted = new FileOutputStream(cacheFile("-pages"));
+		try {
+			corrupted.write(new byte[] { 0, 0 });
+		} finally {
+			corrupted.close();
+		}
+		locator = new MainPDFComponentLocator();
+		assertEquals(expected, new CachedPDFReader(input, locator, new MainBoxDetector(), new MainMarginDetector(), 0,
+				cacheDirectory.getRoot()).toXML());
+		assertEquals(0, locator.getMissCount());
+		assertTrue(cacheFile("-pages").length() > 2);
+	}
+
+	@Test
+	public void fetchOtherURLsOnce() throws IOException {
+		final URL resource = getClass().getResource("/testcase6/input.pdf");
+		final int[] fetches = new int[1];
+		URL input = new URL(null, "counting:/testcase6/input.pdf", new URLStreamHandler() {
+			@Override
+			protected URLConnection openConnection(URL url) throws IOException {
+				fetches[0]++;
+				return resource.openConnection();
+			}
+		});
+		PDFReader reader = new CachedPDFReader(input, new MainPDFComponentLocator(), new MainBoxDetector(),
+				new MainMarginDetector(), 0, cacheDirectory.getRoot());
+		assertEquals(1, fetches[0]);
+		assertEquals(new PDFReader(resource, new MainPDFComponentLocator(), new MainBoxDetector(),
+				new MainMarginDetector()).toXML(), reader.toXML());
+	}
+
+	private File cacheFile(String suffix) {
+		for (File file : cacheDirectory.getRoot().listFiles())
+			if (file.getName().endsWith(suffix))
+				return file;
+		throw new IllegalArgumentException(suffix);
+	}
+}
@@ -0,0 +1,51 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans;
+
+import static java.lang.System.getProperty;
+import static org.apache.commons.io.FileUtils.readFileToString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Test;
+
+import edworld.pdfreader4humans.impl.MainBoxDetector;
+import edworld.pdfreader4humans.impl.MainMarginDetector;
+import edworld.pdfreader4humans.impl.MainPDFComponentLocator;
+
+public class CompactPDFReaderTest {
+	@Test
+	public void toXML() throws IOException {
+		PDFReader reader = new CompactPDFReader(getClass().getResource("/testcase6/input.pdf"),
+				new MainPDFComponentLocator(), new MainBoxDetector(), new MainMarginDetector());
+		assertEquals(14, reader.getNumberOfPages());
+		assertEquals(readFileToString(new File(getClass().getResource("/testcase6/output.xml").getFile()), "UTF-8")
+				.replaceAll("\r?\n", getProperty("line.separator")), reader.toXML());
+		assertSame(reader.getPageGeometry(3), reader.getPageGeometry(3));
+	}
+
+	@Test
+	public void keepRequestedComponents() throws IOException {
+		PDFReader reader = new CompactPDFReader(getClass().getResource("/testcase6/input.pdf"),
+				new MainPDFComponentLocator(), new MainBoxDetector(), new MainMarginDetector());
+		int size = reader.getPageGeometry(3).size();
+		String xml = reader.toXML();
+		List<Component> components = reader.getFirstLevelComponents(3);
+		assertSame(components, reader.getFirstLevelComponents(3));
+		assertEquals(xml, reader.toXML());
+		Component removed = components.remove(0);
+		assertTrue(reader.toXML().length() < xml.length());
+		assertEquals(size - 1 - count(removed.getChildren()), reader.getPageGeometry(3).size());
+	}
+
+	private int count(List<Component> components) {
+		int count = components.size();
+		for (Component component : components)
+			count += count(component.getChildren());
+		return count;
+	}
+}
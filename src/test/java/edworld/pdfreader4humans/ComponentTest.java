@@ -0,0 +1,27 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class ComponentTest {
+	@Test
+	public void childrenOfLeafAreLiveAndMutable() {
+		GroupComponent group = new GroupComponent(0, 0, 100, 100);
+		GridComponent line = new GridComponent("line", 10, 20, 90, 20, 1);
+		GridComponent rect = new GridComponent("rect", 10, 30, 90, 50, 1);
+		List<Component> children = group.getChildren();
+		assertTrue(children.isEmpty());
+		group.addChild(line);
+		assertEquals(asList(line), children);
+		children.add(0, rect);
+		assertEquals(asList(rect, line), group.getChildren());
+		children.remove(rect);
+		assertEquals(asList(line), group.getChildren());
+	}
+}
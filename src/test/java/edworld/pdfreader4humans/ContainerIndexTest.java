@@ -0,0 +1,65 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ContainerIndexTest {
+	@Test
+	public void findContainer() {
+		List<Component> containers = new ArrayList<Component>();
+		containers.add(new GroupComponent(0, 0, 600, 800));
+		containers.add(new BoxComponent(10, 10, 300, 100, 1, true, true, true, true));
+		containers.add(new MarginComponent(10, 10, 300, 100));
+		containers.add(new GridComponent("rect", 20, 20, 100, 50, 1));
+		ContainerIndex index = new ContainerIndex(containers, 0.5F);
+		assertSame(containers.get(3), index.findContainer(new TextComponent("a", 20.4F, 30, 40, 50.4F, "Times", 9)));
+		assertSame(containers.get(1), index.findContainer(new TextComponent("b", 150, 30, 200, 40, "Times", 9)));
+		assertSame(containers.get(0), index.findContainer(new GridComponent("line", 400, 500, 450, 500, 1)));
+		assertNull(index.findContainer(new GridComponent("line", 400, 500, 650, 500, 1)));
+	}
+
+	@Test
+	public void findSameContainerAsLinearSearch() {
+		Random random = new Random(1);
+		List<Component> containers = new ArrayList<Component>();
+		for (int i = 0; i < 300; i++)
+			containers.add(randomComponent(random, i % 2 == 0));
+		for (float tolerance : new float[] { 0, 0.5F, 3 }) {
+			ContainerIndex index = new ContainerIndex(containers, tolerance);
+			for (Component container : containers)
+				assertSame(linearSearch(container, containers, tolerance), index.findContainer(container));
+			for (int i = 0; i < 1000; i++) {
+				Component component = randomComponent(random, i % 3 == 0);
+				assertSame(linearSearch(component, containers, tolerance), index.findContainer(component));
+			}
+		}
+	}
+
+	private Component randomComponent(Random random, boolean text) {
+		float fromX = random.nextInt(600) + random.nextInt(4) / 4F;
+		float fromY = random.nextInt(800) + random.nextInt(4) / 4F;
+		float toX = fromX + random.nextInt(text ? 40 : 300);
+		float toY = fromY + random.nextInt(text ? 10 : 300);
+		if (text)
+			return new TextComponent("text", fromX, fromY, toX, toY, "Times", 9);
+		return new GridComponent("rect", fromX, fromY, toX, toY, 1);
+	}
+
+	private Component linearSearch(Component component, List<Component> containers, float tolerance) {
+		Component container = null;
+		float area = Float.POSITIVE_INFINITY;
+		for (Component possibleContainer : containers)
+			if (possibleContainer.contains(component, tolerance) && possibleContainer.getArea() < area) {
+				container = possibleContainer;
+				area = possibleContainer.getArea();
+			}
+		return container;
+	}
+}
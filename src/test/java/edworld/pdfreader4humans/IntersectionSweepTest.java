@@ -0,0 +1,76 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class IntersectionSweepTest {
+	@Test
+	public void connectIntersectingComponents() {
+		List<Component> components = new ArrayList<Component>();
+		components.add(new GridComponent("line", 0, 0, 100, 0, 1));
+		components.add(new GridComponent("line", 200, 0, 300, 0, 1));
+		components.add(new GridComponent("line", 50, -10, 50, 50, 1));
+		components.add(new GridComponent("line", 0, 50, 60, 50, 1));
+		components.add(new GridComponent("line", 0, 60, 300, 60, 1));
+		IntersectionSweep sweep = new IntersectionSweep(components);
+		assertEquals(sweep.findRoot(0), sweep.findRoot(2));
+		assertEquals(sweep.findRoot(0), sweep.findRoot(3));
+		assertTrue(sweep.findRoot(0) != sweep.findRoot(1));
+		assertFalse(sweep.isIntersecting(1));
+		assertFalse(sweep.isIntersecting(4));
+	}
+
+	@Test
+	public void connectSameComponentsAsPairwiseScan() {
+		Random random = new Random(1);
+		for (int test = 0; test < 200; test++) {
+			List<Component> components = new ArrayList<Component>();
+			for (int index = 0; index < 60; index++) {
+				float x = random.nextInt(100);
+				float y = random.nextInt(100);
+				components.add(new GridComponent("rect", x, y, x + random.nextInt(30), y + random.nextInt(30), 1));
+			}
+			IntersectionSweep sweep = new IntersectionSweep(components);
+			int[] parents = new int[components.size()];
+			for (int index = 0; index < parents.length; index++)
+				parents[index] = index;
+			boolean[] intersecting = new boolean[components.size()];
+			for (int index1 = 0; index1 < parents.length; index1++)
+				for (int index2 = index1 + 1; index2 < parents.length; index2++)
+					if (components.get(index1).intersects(components.get(index2))) {
+						intersecting[index1] = intersecting[index2] = true;
+						parents[root(parents, index2)] = root(parents, index1);
+					}
+			for (int index1 = 0; index1 < parents.length; index1++) {
+				assertEquals(intersecting[index1], sweep.isIntersecting(index1));
+				for (int index2 = 0; index2 < parents.length; index2++)
+					assertEquals(root(parents, index1) == root(parents, index2),
+							sweep.findRoot(index1) == sweep.findRoot(index2));
+			}
+		}
+	}
+
+	@Test
+	public void sweepStackedRules() {
+		List<Component> components = new ArrayList<Component>();
+		for (int index = 0; index < 64000; index++)
+			components.add(new GridComponent("line", 50, index * 2, 750, index * 2 + 0.5F, 1));
+		IntersectionSweep sweep = new IntersectionSweep(components);
+		for (int index = 0; index < components.size(); index++)
+			assertFalse(sweep.isIntersecting(index));
+	}
+
+	private int root(int[] parents, int index) {
+		while (parents[index] != index)
+			index = parents[index];
+		return index;
+	}
+}
@@ -0,0 +1,61 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans;
+
+import static java.lang.System.getProperty;
+import static org.apache.commons.io.FileUtils.readFileToString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edworld.pdfreader4humans.impl.MainBoxDetector;
+import edworld.pdfreader4humans.impl.MainMarginDetector;
+import edworld.pdfreader4humans.impl.MainPDFComponentLocator;
+
+public class LazyPDFReaderTest {
+	private LazyPDFReader reader;
+
+	@Before
+	public void setUp() throws IOException {
+		reader = new LazyPDFReader(getClass().getResource("/testcase6/input.pdf"), new MainPDFComponentLocator(),
+				new MainBoxDetector(), new MainMarginDetector());
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		reader.close();
+	}
+
+	@Test
+	public void getFirstLevelComponents() throws IOException {
+		PDFReader eagerReader = new PDFReader(getClass().getResource("/testcase6/input.pdf"),
+				new MainPDFComponentLocator(), new MainBoxDetector(), new MainMarginDetector());
+		assertEquals(14, reader.getNumberOfPages());
+		assertEquals(eagerReader.getFirstLevelComponents(3).toString(), reader.getFirstLevelComponents(3).toString());
+		assertSame(reader.getFirstLevelComponents(3), reader.getFirstLevelComponents(3));
+	}
+
+	@Test
+	public void toXML() throws IOException {
+		assertEquals(readFileToString(new File(getClass().getResource("/testcase6/output.xml").getFile()), "UTF-8")
+				.replaceAll("\r?\n", getProperty("line.separator")), reader.toXML());
+	}
+
+	@Test
+	public void pagesReadBeforeClosingRemainAvailable() throws IOException {
+		int size = reader.getFirstLevelComponents(1).size();
+		reader.close();
+		assertEquals(size, reader.getFirstLevelComponents(1).size());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void cannotReadPagesAfterClosing() throws IOException {
+		reader.close();
+		reader.getFirstLevelComponents(2);
+	}
+}
@@ -0,0 +1,179 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans;
+
+import static java.lang.Math.abs;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class MarginExpansionTest {
+	@Test
+	public void joinAlignedMargins() {
+		MarginComponent top = new MarginComponent(0, 0, 100, 10);
+		MarginComponent middle = new MarginComponent(0.5f, 20, 100.5f, 30);
+		MarginComponent bottom = new MarginComponent(0, 40, 100, 50);
+		MarginComponent narrow = new MarginComponent(0, 60, 50, 70);
+		TextComponent side = new TextComponent("Side", 200, 20, 300, 30, "Arial", 10);
+		List<Component> components = new ArrayList<Component>();
+		Collections.addAll(components, top, side, middle, bottom, narrow);
+		new MarginExpansion(components).expand();
+		assertEquals(3, components.size());
+		Component margin = components.get(0);
+		assertEquals("margin :: 0.0, 0.0, 100.5, 50.0", margin.toString());
+		assertEquals(side, components.get(1));
+		assertEquals(narrow, components.get(2));
+	}
+
+	@Test
+	public void joinLongChainOfMargins() {
+		List<Component> components = new ArrayList<Component>();
+		for (int line = 0; line < 2000; line++) {
+			components.add(new MarginComponent(50 + (line % 2) * 0.3f, line * 12, 500, line * 12 + 10));
+			components.add(new TextComponent("text", 600, line * 12, 700, line * 12 + 10, "Arial", 10));
+		}
+		new MarginExpansion(components).expand();
+		assertEquals(2001, components.size());
+		List<Component> margins = new ArrayList<Component>();
+		for (Component component : components)
+			if (component instanceof MarginComponent)
+				margins.add(component);
+		assertEquals(1, margins.size());
+		assertEquals("margin :: 50.0, 0.0, 500.0, 23998.0", margins.get(0).toString());
+		assertEquals(1999, margins.get(0).getChildren().size());
+	}
+
+	@Test
+	public void joinLikeRepeatedSortOnOverlappingColumns() {
+		Random random = new Random(5);
+		int compared = 0;
+		for (int layout = 0; layout < 3000; layout++) {
+			List<Component> components = new ArrayList<Component>();
+			int columns = 2 + random.nextInt(2);
+			for (int index = 0; index < 10 + random.nextInt(40); index++) {
+				float x = random.nextInt(columns) * 200 + random.nextFloat() * 1.5f;
+				float y = random.nextInt(40) * 10;
+				float width = 150 + (random.nextInt(4) == 0 ? random.nextInt(40) : random.nextFloat());
+				int kind = random.nextInt(6);
+				if (kind < 3)
+					components.add(new MarginComponent(x, y, x + width, y + 5 + random.nextInt(20)));
+				else if (kind < 5)
+					components.add(new TextComponent("text", x + random.nextInt(50), y, x + width - random.nextInt(50),
+							y + 5, "Arial", 10));
+				else
+					components.add(new GroupComponent(x, y, x + width, y + 30 + random.nextInt(100)));
+			}
+			List<Component> expected = new ArrayList<Component>(components);
+			try {
+				Component.smartSort(components);
+				expected = new ArrayList<Component>(components);
+				expandByRepeatedSort(expected);
+			} catch (IllegalArgumentException e) {
+				continue;
+			}
+			new MarginExpansion(components).expand();
+			assertEquals(describe(expected), describe(components));
+			compared++;
+		}
+		assertTrue(compared > 2500);
+	}
+
+	@Test
+	public void rankLikeCollectionsSortOfTheJDKInUse() {
+		Random random = new Random(7);
+		int compared = 0;
+		int outOfOrder = 0;
+		for (int test = 0; test < 4000; test++) {
+			List<Component> run = new ArrayList<Component>();
+			for (int index = 1 + random.nextInt(120); index > 0; index--)
+				run.add(overlappingText(random));
+			try {
+				Collections.sort(run);
+			} catch (IllegalArgumentException e) {
+				continue;
+			}
+			if (!ascending(run))
+				continue;
+			Component component = overlappingText(random);
+			List<Component> sorted = new ArrayList<Component>(run);
+			sorted.add(component);
+			Collections.sort(sorted);
+			int rank = sorted.indexOf(component);
+			sorted.remove(rank);
+			assertEquals(run, sorted);
+			assertEquals(rank, new MarginExpansion(run).sortedRank(component));
+			if (rank != upperBound(run, component))
+				outOfOrder++;
+			compared++;
+		}
+		assertTrue(compared > 3000);
+		assertTrue(outOfOrder > 0);
+	}
+
+	private Component overlappingText(Random random) {
+		float x = random.nextInt(500);
+		float y = random.nextInt(200);
+		return new TextComponent("text", x, y, x + 10, y + 1 + random.nextInt(30), "Arial", 10);
+	}
+
+	private boolean ascending(List<Component> run) {
+		for (int index = 1; index < run.size(); index++)
+			if (run.get(index).compareTo(run.get(index - 1)) < 0)
+				return false;
+		return true;
+	}
+
+	/**
+	 * Rank after the last component not greater than the given one, which
+	 * every stable sort gives when the order is transitive.
+	 */
+	private int upperBound(List<Component> run, Component component) {
+		int rank = run.size();
+		while (rank > 0 && component.compareTo(run.get(rank - 1)) < 0)
+			rank--;
+		return rank;
+	}
+
+	private void expandByRepeatedSort(List<Component> components) {
+		for (Component margin : components)
+			if (margin instanceof MarginComponent)
+				if (joined(margin.nextUpperHorizontalComponent(margin.getToX(), margin.getFromX(), components), margin,
+						components)
+						|| joined(margin.nextLowerHorizontalComponent(margin.getToX(), margin.getFromX(), components),
+								margin, components)) {
+					expandByRepeatedSort(components);
+					break;
+				}
+	}
+
+	private boolean joined(Component near, Component margin, List<Component> components) {
+		if (near == null || abs(near.getFromX() - margin.getFromX()) >= 1 || abs(near.getToX() - margin.getToX()) >= 1)
+			return false;
+		components.remove(near);
+		components.remove(margin);
+		MarginComponent newMargin = new MarginComponent(min(margin.getFromX(), near.getFromX()),
+				min(margin.getFromY(), near.getFromY()), max(margin.getToX(), near.getToX()),
+				max(margin.getToY(), near.getToY()));
+		for (Component child : margin.getChildren())
+			newMargin.addChild(child);
+		newMargin.addChild(near);
+		Collections.sort(newMargin.getChildren());
+		components.add(newMargin);
+		Collections.sort(components);
+		return true;
+	}
+
+	private String describe(List<Component> components) {
+		StringBuilder description = new StringBuilder();
+		for (Component component : components)
+			description.append(component).append(" [").append(describe(component.getChildren())).append("] ");
+		return description.toString();
+	}
+}
@@ -2,19 +2,27 @@
 package edworld.pdfreader4humans;
 
 import static java.lang.Math.max;
+import static java.lang.Math.round;
 import static java.lang.System.getProperty;
 import static org.apache.commons.io.IOUtils.readLines;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.awt.Color;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.imageio.ImageIO;
 
+import org.apache.commons.io.FileUtils;
 import org.junit.BeforeClass;
 import org.junit.Ignore;
 import org.junit.Test;
@@ -65,6 +73,102 @@ public class PDFReaderTest {
 		assertEquals(text(readLinesFromResource("/testcase6/output.xml")), reader6.toXML());
 	}
 
+	@Test
+	public void toXMLStream() throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		reader6.toXML(output);
+		assertEquals(text(readLinesFromResource("/testcase6/output.xml")), output.toString(UTF_8));
+	}
+
+	@Test
+	@SuppressWarnings("deprecation")
+	public void applyStringHooksOfSubclasses() throws IOException {
+		PDFReader reader = new PDFReader(PDFReaderTest.class.getResource("/testcase6/input.pdf"),
+				new MainPDFComponentLocator(), new MainBoxDetector(), new MainMarginDetector()) {
+			@Override
+			protected String pageToXML(int pageNumber, List<Component> pageFirstLevelComponents, int indentLevel) {
+				return super.pageToXML(pageNumber, pageFirstLevelComponents, indentLevel).replace("<page ",
+						"<page kind=\"scanned\" ");
+			}
+
+			@Override
+			protected String output(Component component, int indentLevel) {
+				return super.output(component, indentLevel).replace(" fromX=", " x=");
+			}
+
+			@Override
+			protected String removeEmptyLines(String text) {
+				return super.removeEmptyLines(text).replace("\t", "  ");
+			}
+		};
+		String expected = text(readLinesFromResource("/testcase6/output.xml"));
+		assertEquals(expected.replace("<page ", "<page kind=\"scanned\" ").replace(" fromX=", " x=")
+				.replace("\t", "  "), reader.toXML());
+	}
+
+	@Test
+	@SuppressWarnings("deprecation")
+	public void applyTemplateHooksOfSubclasses() throws IOException {
+		PDFReader reader = new PDFReader(PDFReaderTest.class.getResource("/testcase1/input.pdf"),
+				new MainPDFComponentLocator(), new MainBoxDetector(), new MainMarginDetector()) {
+			{
+				templateMap.put("pdfreader4humans-page.xml", "<page number=\"${pageNumber}\">\n${content}\n</page>\n");
+			}
+
+			@Override
+			protected String indent(String output, int indentLevel) {
+				return super.indent(output, indentLevel).replace("\t", "  ");
+			}
+
+			@Override
+			protected List<Component> getComponentsToWrite(int pageNumber) {
+				List<Component> components = new ArrayList<Component>();
+				components.add(new TextComponent("A", 1, 2, 3, 4, "Arial", 10) {
+					@Override
+					public String output(String template) {
+						return super.output(template).replace("<text ", "<text lang=\"en\" ");
+					}
+				});
+				return components;
+			}
+		};
+		String lineBreak = getProperty("line.separator");
+		String expected = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + lineBreak + "<pdfreader4humans>" + lineBreak;
+		for (int pageNumber = 1; pageNumber <= reader.getNumberOfPages(); pageNumber++)
+			expected += "  <page number=\"" + pageNumber + "\">" + lineBreak
+					+ "    <text lang=\"en\" fromX=\"1.0\" fromY=\"2.0\" toX=\"3.0\" toY=\"4.0\" fontName=\"Arial\""
+					+ " fontSize=\"10.0\"><![CDATA[A]]></text>" + lineBreak + "  </page>" + lineBreak;
+		assertEquals(expected + "</pdfreader4humans>" + lineBreak, reader.toXML());
+	}
+
+	@Test
+	public void readPagesInParallel() throws IOException {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			PDFReader reader = new PDFReader(getClass().getResource("/testcase6/input.pdf"),
+					new MainPDFComponentLocator(), new MainBoxDetector(), new MainMarginDetector(), 0, executor);
+			assertEquals(text(readLinesFromResource("/testcase6/output.xml")), reader.toXML());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void readPagesOneAtATime() throws IOException {
+		final List<String> pages = new ArrayList<String>();
+		PDFReader.readPages(getClass().getResource("/testcase6/input.pdf"), new MainPDFComponentLocator(),
+				new MainBoxDetector(), new MainMarginDetector(), 0, new PageHandler() {
+					@Override
+					public void handlePage(int pageNumber, List<Component> firstLevelComponents) {
+						assertEquals(pages.size() + 1, pageNumber);
+						pages.add(firstLevelComponents.toString());
+					}
+				});
+		assertEquals(reader6.getNumberOfPages(), pages.size());
+		for (int pageNumber = 1; pageNumber <= pages.size(); pageNumber++)
+			assertEquals(reader6.getFirstLevelComponents(pageNumber).toString(), pages.get(pageNumber - 1));
+	}
+
 	@Test
 	public void toTextLines() throws IOException {
 //		for (Component component : reader3.getFirstLevelComponents(1)) {
@@ -97,6 +201,13 @@ public class PDFReaderTest {
 		assertEquals(text(readLinesFromResource("/testcase8/output.txt")), text(reader8.toTextLines()));
 	}
 
+	@Test
+	public void toTextStream() throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		reader2.toText(output);
+		assertEquals(text(readLinesFromResource("/testcase2/output.txt")), output.toString(UTF_8));
+	}
+
 	@Test
 	@Ignore
 	public void toTextLinesInProgress() throws IOException {
@@ -132,6 +243,63 @@ public class PDFReaderTest {
 				ImageIO.read(outputFile));
 	}
 
+	@Test
+	public void createPageImageWithoutLoadingThePDFAgain() throws IOException {
+		File input = File.createTempFile("input", ".pdf", new File("target"));
+		FileUtils.copyURLToFile(getClass().getResource("/testcase1/input.pdf"), input);
+		PDFReader reader = new PDFReader(input.toURI().toURL(), new MainPDFComponentLocator(), new MainBoxDetector(),
+				new MainMarginDetector());
+		assertTrue(input.delete());
+		PageBox pageBox = reader.getPageBox(1);
+		assertEquals(0, pageBox.getRotation());
+		BufferedImage image = reader.createPageImage(1, 2, Color.BLACK, Color.WHITE, false);
+		assertEquals(Math.round(pageBox.getWidth() * 2), image.getWidth());
+		assertEquals(Math.round(pageBox.getHeight() * 2), image.getHeight());
+	}
+
+	@Test
+	public void createPageImagesInParallel() throws IOException {
+		File directory = new File("target/pageImages");
+		PNGPageImageWriter imageWriter = new PNGPageImageWriter(directory, "page");
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		try {
+			reader6.createPageImages(2, Color.WHITE, Color.BLACK, true, executor, imageWriter);
+		} finally {
+			executor.shutdown();
+		}
+		for (int pageNumber = 1; pageNumber <= reader6.getNumberOfPages(); pageNumber++) {
+			BufferedImage expected = reader6.createPageImage(pageNumber, 2, Color.WHITE, Color.BLACK, true);
+			BufferedImage image = ImageIO.read(imageWriter.getFile(pageNumber));
+			assertEquals(expected.getWidth(), image.getWidth());
+			assertEquals(expected.getHeight(), image.getHeight());
+			for (int y = 0; y < image.getHeight(); y++)
+				for (int x = 0; x < image.getWidth(); x++)
+					assertEquals(expected.getRGB(x, y), image.getRGB(x, y));
+		}
+	}
+
+	@Test
+	public void createImageOfPageRegion() throws IOException {
+		BufferedImage page = reader5.createPageImage(1, 2, Color.BLACK, Color.WHITE, true);
+		int[][] regions = { { 286, 248, 163, 436 }, { 0, 0, 120, 80 }, { 300, 500, 50, 40 } };
+		for (int[] region : regions) {
+			BufferedImage image = reader5.createPageImage(1, 2F,
+					new Rectangle(region[0], region[1], region[2], region[3]), Color.BLACK, Color.WHITE, true);
+			assertEquals(region[2] * 2, image.getWidth());
+			assertEquals(region[3] * 2, image.getHeight());
+			for (int y = 0; y < image.getHeight(); y++)
+				for (int x = 0; x < image.getWidth(); x++)
+					assertEquals(page.getRGB(region[0] * 2 + x, region[1] * 2 + y), image.getRGB(x, y));
+		}
+	}
+
+	@Test
+	public void createThumbnailOfPage() throws IOException {
+		BufferedImage thumbnail = reader5.createPageImage(1, 0.25F, null, Color.BLACK, Color.WHITE, false);
+		assertEquals(round(reader5.getPageBox(1).getWidth() * 0.25F), thumbnail.getWidth(), 1);
+		assertEquals(round(reader5.getPageBox(1).getHeight() * 0.25F), thumbnail.getHeight(), 1);
+	}
+
 	private String text(List<String> lines) {
 		String text = "";
 		for (String line : lines)
@@ -0,0 +1,77 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Test;
+
+import edworld.pdfreader4humans.impl.MainBoxDetector;
+import edworld.pdfreader4humans.impl.MainMarginDetector;
+import edworld.pdfreader4humans.impl.MainPDFComponentLocator;
+
+public class PageGeometryTest {
+	@Test
+	public void toComponents() throws IOException {
+		for (int testcase = 1; testcase <= 8; testcase++) {
+			PDFReader reader = new PDFReader(getClass().getResource("/testcase" + testcase + "/input.pdf"),
+					new MainPDFComponentLocator(), new MainBoxDetector(), new MainMarginDetector(),
+					testcase == 8 ? 0.5F : 0);
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			reader.toBinary(output);
+			BinaryComponentReader binaryReader = new BinaryComponentReader(
+					new ByteArrayInputStream(output.toByteArray()));
+			for (int pageNumber = 1; pageNumber <= reader.getNumberOfPages(); pageNumber++) {
+				String expected = describe(reader.getFirstLevelComponents(pageNumber));
+				assertEquals(expected, describe(reader.getPageGeometry(pageNumber).toComponents()));
+				assertEquals(expected, describe(PageGeometry.read(binaryReader).toComponents()));
+			}
+			assertNull(PageGeometry.read(binaryReader));
+		}
+	}
+
+	@Test
+	public void nodes() {
+		TextComponent text = new TextComponent("Title", 10, 10, 50, 20, "Arial", 12);
+		BoxComponent box = new BoxComponent(5, 5, 100, 100, 1, true, false, true, false);
+		box.addChild(text);
+		box.addChild(new TextComponent("Body", 10, 30, 40, 40, "Arial", 10));
+		MarginComponent margin = new MarginComponent(0, 0, 200, 200);
+		margin.addChild(box);
+		GridComponent line = new GridComponent("line", 0, 250, 200, 250, 0.5f);
+		PageGeometry geometry = new PageGeometry(asList(margin, line));
+		assertEquals(5, geometry.size());
+		List<PageGeometry.Node> firstLevel = geometry.getFirstLevelNodes();
+		assertEquals(2, firstLevel.size());
+		assertEquals("margin", firstLevel.get(0).getType());
+		assertEquals("line", firstLevel.get(1).getType());
+		assertEquals(0.5f, firstLevel.get(1).getLineWidth(), 0);
+		assertNull(firstLevel.get(1).getParent());
+		PageGeometry.Node boxNode = firstLevel.get(0).getChildren().get(0);
+		assertEquals(firstLevel.get(0), boxNode.getParent());
+		assertEquals(true, boxNode.isBorderLeft());
+		assertEquals(false, boxNode.isBorderTop());
+		assertEquals(2, boxNode.getChildren().size());
+		PageGeometry.Node body = boxNode.getChildren().get(1);
+		assertEquals("Body", body.getText());
+		assertEquals("Arial", body.getFontName());
+		assertEquals(10, body.getFontSize(), 0);
+		assertEquals(30, body.getWidth(), 0);
+		assertEquals(boxNode, body.getParent());
+		assertEquals(0, body.getChildren().size());
+		assertEquals("Title", geometry.get(2).getText());
+	}
+
+	private String describe(List<Component> components) {
+		StringBuilder description = new StringBuilder();
+		for (Component component : components)
+			description.append(component).append(" [").append(describe(component.getChildren())).append("]\n");
+		return description.toString();
+	}
+}
@@ -0,0 +1,41 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ReadingOrderTest {
+	@Test
+	public void sortLinesFromLeftToRight() {
+		List<Component> expected = new ArrayList<Component>();
+		for (int line = 0; line < 1000; line++)
+			for (int word = 0; word < 10; word++)
+				expected.add(new TextComponent(line + "-" + word, word * 50 + line % 3, line * 12, word * 50 + 40,
+						line * 12 + 10, "Arial", 10));
+		List<Component> components = new ArrayList<Component>(expected);
+		Collections.shuffle(components, new Random(1));
+		ReadingOrder.sort(components);
+		assertEquals(expected, components);
+	}
+
+	@Test
+	public void moveComponentsBeforeFirstOverlappingOneAfterThem() {
+		TextComponent title = new TextComponent("Title", 100, 0, 200, 10, "Arial", 12);
+		TextComponent left = new TextComponent("Left", 0, 20, 50, 80, "Arial", 10);
+		TextComponent right1 = new TextComponent("Right 1", 60, 20, 150, 30, "Arial", 10);
+		TextComponent right2 = new TextComponent("Right 2", 60, 40, 150, 50, "Arial", 10);
+		TextComponent footer = new TextComponent("Footer", 0, 90, 150, 100, "Arial", 10);
+		List<Component> components = new ArrayList<Component>();
+		Collections.addAll(components, footer, right2, left, title, right1);
+		ReadingOrder.sort(components);
+		List<Component> expected = new ArrayList<Component>();
+		Collections.addAll(expected, title, right1, left, right2, footer);
+		assertEquals(expected, components);
+	}
+}
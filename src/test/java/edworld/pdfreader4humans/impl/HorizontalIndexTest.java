@@ -0,0 +1,40 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans.impl;
+
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edworld.pdfreader4humans.Component;
+import edworld.pdfreader4humans.GridComponent;
+
+public class HorizontalIndexTest {
+	@Test
+	public void findSameNeighboursAsLinearSearch() {
+		Random random = new Random(1);
+		List<GridComponent> lines = new ArrayList<GridComponent>();
+		for (int i = 0; i < 200; i++)
+			lines.add(randomLine(random));
+		List<Component> horizontalComponents = Component.horizontal(lines);
+		HorizontalIndex index = new HorizontalIndex(horizontalComponents);
+		for (int i = 0; i < 1000; i++) {
+			Component component = horizontalComponents.get(random.nextInt(horizontalComponents.size()));
+			float maxLeft = random.nextInt(60) * 10;
+			float minRight = maxLeft + random.nextInt(20) * 10;
+			assertSame(component.nextUpperHorizontalComponent(maxLeft, minRight, horizontalComponents),
+					index.nextUpper(component, maxLeft, minRight));
+			assertSame(component.nextLowerHorizontalComponent(maxLeft, minRight, horizontalComponents),
+					index.nextLower(component, maxLeft, minRight));
+		}
+	}
+
+	private GridComponent randomLine(Random random) {
+		float fromX = random.nextInt(60) * 10;
+		float fromY = random.nextInt(80) * 10;
+		return new GridComponent("rect", fromX, fromY, fromX + 10 + random.nextInt(30) * 10, fromY + 1, 1);
+	}
+}
@@ -0,0 +1,38 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans.impl;
+
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edworld.pdfreader4humans.Component;
+import edworld.pdfreader4humans.GridComponent;
+
+public class LowerNeighborIndexTest {
+	@Test
+	public void findSameNeighboursAsLinearSearch() {
+		Random random = new Random(1);
+		List<Component> components = new ArrayList<Component>();
+		for (int i = 0; i < 200; i++)
+			components.add(randomRectangle(random));
+		LowerNeighborIndex index = new LowerNeighborIndex(components);
+		for (int i = 0; i < 1000; i++) {
+			Component component = components.get(random.nextInt(components.size()));
+			float maxLeft = random.nextInt(60) * 10;
+			float minRight = maxLeft - 50 + random.nextInt(20) * 10;
+			assertSame(component.nextLowerHorizontalComponent(maxLeft, minRight, components),
+					index.nextLower(component, maxLeft, minRight));
+		}
+	}
+
+	private GridComponent randomRectangle(Random random) {
+		float fromX = random.nextInt(60) * 10;
+		float fromY = random.nextInt(80) * 10;
+		return new GridComponent("rect", fromX, fromY, fromX + 10 + random.nextInt(30) * 10,
+				fromY + 1 + random.nextInt(5) * 10, 1);
+	}
+}
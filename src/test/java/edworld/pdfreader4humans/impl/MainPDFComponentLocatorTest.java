@@ -4,9 +4,12 @@ package edworld.pdfreader4humans.impl;
 import static org.hamcrest.CoreMatchers.hasItem;
 import static org.hamcrest.CoreMatchers.not;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 
 import java.io.IOException;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -136,6 +139,68 @@ public class MainPDFComponentLocatorTest {
 				result);
 	}
 
+	@Test
+	public void cacheMostRecentlyUsedPages() throws IOException {
+		MainPDFComponentLocator cachingLocator = new MainPDFComponentLocator(1);
+		doc = PDFUtil.load(getClass().getResource("/testcase6/input.pdf"));
+		PDFPage page = new PDFPage(0, doc.getPage(0), doc);
+		List<TextComponent> components = cachingLocator.locateTextComponents(page);
+		assertSame(components, cachingLocator.locateTextComponents(new PDFPage(0, doc.getPage(0), doc)));
+		cachingLocator.locateGridComponents(new PDFPage(1, doc.getPage(1), doc));
+		cachingLocator.locateTextComponents(page);
+		assertEquals(3, cachingLocator.getMissCount());
+		assertEquals(1, cachingLocator.getHitCount());
+		assertEquals(2, cachingLocator.getEvictionCount());
+		doc.close();
+		doc = PDFUtil.load(getClass().getResource("/testcase6/input.pdf"));
+		cachingLocator.locateTextComponents(new PDFPage(0, doc.getPage(0), doc));
+		assertEquals(4, cachingLocator.getMissCount());
+		assertEquals(3, cachingLocator.getEvictionCount());
+	}
+
+	@Test
+	public void locateTextAgainstFilteredGridComponents() throws IOException {
+		doc = PDFUtil.load(getClass().getResource("/testcase2/input.pdf"));
+		MainPDFComponentLocator filteringLocator = new MainPDFComponentLocator() {
+			@Override
+			protected List<GridComponent> locateAllGridComponents(PDFPage page) throws IOException {
+				List<GridComponent> gridComponents = new ArrayList<GridComponent>();
+				for (GridComponent gridComponent : super.locateAllGridComponents(page))
+					if (gridComponent.getToX() - gridComponent.getFromX() > gridComponent.getToY()
+							- gridComponent.getFromY())
+						gridComponents.add(gridComponent);
+				return gridComponents;
+			}
+		};
+		page1 = new PDFPage(0, doc.getPages().get(0), doc);
+		List<String> expectedGridComponents = new ArrayList<>();
+		for (GridComponent gridComponent : locator.locateGridComponents(page1))
+			if (gridComponent.getToX() - gridComponent.getFromX() > gridComponent.getToY() - gridComponent.getFromY())
+				expectedGridComponents.add(gridComponent.toString());
+		assertEquals(expectedGridComponents.toString(), filteringLocator.locateGridComponents(page1).toString());
+		assertEquals(220, locator.locateTextComponents(page1).size());
+		assertEquals(219, filteringLocator.locateTextComponents(page1).size());
+	}
+
+	@Test
+	public void doNotKeepDocumentsReachable() throws IOException, InterruptedException {
+		MainPDFComponentLocator cachingLocator = new MainPDFComponentLocator();
+		PDDocument document = PDFUtil.load(getClass().getResource("/testcase6/input.pdf"));
+		cachingLocator.locateTextComponents(new PDFPage(0, document.getPage(0), document));
+		WeakReference<PDDocument> reference = new WeakReference<PDDocument>(document);
+		document.close();
+		document = null;
+		for (int attempt = 0; attempt < 100 && reference.get() != null; attempt++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertNull(reference.get());
+		doc = PDFUtil.load(getClass().getResource("/testcase6/input.pdf"));
+		cachingLocator.locateTextComponents(new PDFPage(0, doc.getPage(0), doc));
+		assertEquals(2, cachingLocator.getMissCount());
+		assertEquals(1, cachingLocator.getEvictionCount());
+	}
+
 	@After
 	public void tearDown() throws IOException {
 		if (doc != null) {
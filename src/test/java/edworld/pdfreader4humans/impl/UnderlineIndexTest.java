@@ -0,0 +1,63 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans.impl;
+
+import static java.lang.Math.abs;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edworld.pdfreader4humans.Component;
+import edworld.pdfreader4humans.GridComponent;
+
+public class UnderlineIndexTest {
+	@Test
+	public void findSameUnderlinesAsLinearSearch() {
+		Random random = new Random(1);
+		List<Component> components = new ArrayList<Component>();
+		for (int i = 0; i < 300; i++) {
+			float fromX = random.nextInt(60) * 5;
+			float toY = random.nextInt(80) * 5 + random.nextInt(3) * 0.25f;
+			components.add(new GridComponent("line", fromX, toY - random.nextInt(2), fromX + 5 + random.nextInt(4) * 5,
+					toY, 1));
+		}
+		UnderlineIndex index = new UnderlineIndex(components);
+		for (int i = 0; i < 2000; i++) {
+			float fromX = random.nextInt(60) * 5 + random.nextInt(3) * 0.05f;
+			float toY = random.nextInt(80) * 5;
+			GridComponent glyph = new GridComponent("rect", fromX, toY - 8, fromX + 5 + random.nextInt(4) * 5, toY, 1);
+			assertEquals(linearSearch(glyph, components),
+					index.find(glyph.getFromX(), glyph.getFromY(), glyph.getToX(), glyph.getToY()));
+		}
+	}
+
+	@Test
+	public void removeMarkedComponents() {
+		GridComponent underline = new GridComponent("line", 10, 20, 30, 20, 1);
+		GridComponent other = new GridComponent("line", 10, 40, 30, 40, 1);
+		List<GridComponent> gridComponents = new ArrayList<GridComponent>();
+		gridComponents.add(other);
+		gridComponents.add(underline);
+		List<Component> horizontalComponents = new ArrayList<Component>();
+		horizontalComponents.add(underline);
+		horizontalComponents.add(other);
+		UnderlineIndex index = new UnderlineIndex(horizontalComponents);
+		int found = index.find(10, 12, 30, 20);
+		assertEquals(0, found);
+		index.mark(found);
+		assertEquals(0, index.find(10, 12, 30, 20));
+		index.removeMarked(gridComponents);
+		assertEquals(1, gridComponents.size());
+		assertEquals(other, gridComponents.get(0));
+	}
+
+	private int linearSearch(Component glyph, List<Component> components) {
+		for (int i = 0; i < components.size(); i++)
+			if (components.get(i).underlineOf(glyph) && abs(components.get(i).getWidth() - glyph.getWidth()) < 0.1)
+				return i;
+		return -1;
+	}
+}
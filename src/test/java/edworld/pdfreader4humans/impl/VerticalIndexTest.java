@@ -0,0 +1,72 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edworld.pdfreader4humans.Component;
+import edworld.pdfreader4humans.GridComponent;
+
+public class VerticalIndexTest {
+	@Test
+	public void followVerticalExtensions() {
+		List<GridComponent> lines = new ArrayList<GridComponent>();
+		lines.add(new GridComponent("rect", 10, 30, 11, 50, 1));
+		lines.add(new GridComponent("rect", 10, 0, 11, 20, 1));
+		lines.add(new GridComponent("rect", 10, 20, 11, 30, 1));
+		lines.add(new GridComponent("rect", 10, 60, 11, 80, 1));
+		lines.add(new GridComponent("rect", 20, 10, 21, 70, 1));
+		VerticalIndex index = new VerticalIndex(Component.vertical(lines));
+		assertEquals(0, index.transitiveTop(lines.get(0)), 0);
+		assertEquals(50, index.transitiveBottom(lines.get(1)), 0);
+		assertEquals(80, index.transitiveBottom(lines.get(3)), 0);
+		assertEquals("[" + lines.get(0) + ", " + lines.get(4) + "]",
+				index.intersecting(new GridComponent("rect", 0, 40, 30, 41, 1)).toString());
+	}
+
+	@Test
+	public void findSameComponentsAsLinearSearch() {
+		Random random = new Random(1);
+		List<GridComponent> lines = new ArrayList<GridComponent>();
+		for (int i = 0; i < 200; i++) {
+			float fromX = random.nextInt(20) * 10;
+			float fromY = random.nextInt(40) * 10;
+			lines.add(new GridComponent("rect", fromX, fromY, fromX + 1, fromY + 10 + random.nextInt(5) * 10, 1));
+		}
+		List<Component> verticalComponents = Component.vertical(lines);
+		VerticalIndex index = new VerticalIndex(verticalComponents);
+		for (int i = 0; i < 500; i++) {
+			float fromX = random.nextInt(20) * 10;
+			float fromY = random.nextInt(40) * 10;
+			Component horizontal = new GridComponent("rect", fromX, fromY, fromX + random.nextInt(10) * 10, fromY + 1, 1);
+			List<Component> expected = new ArrayList<Component>();
+			for (Component vertical : verticalComponents)
+				if (horizontal.intersects(vertical))
+					expected.add(vertical);
+			assertEquals(expected, index.intersecting(horizontal));
+		}
+		for (Component vertical : verticalComponents) {
+			assertEquals(linearTop(vertical, verticalComponents), index.transitiveTop(vertical), 0);
+			assertEquals(linearBottom(vertical, verticalComponents), index.transitiveBottom(vertical), 0);
+		}
+	}
+
+	private float linearTop(Component component, List<Component> verticalComponents) {
+		for (Component candidate : verticalComponents)
+			if (component.verticalExtension(candidate) && candidate.getFromY() < component.getFromY())
+				return linearTop(candidate, verticalComponents);
+		return component.getFromY();
+	}
+
+	private float linearBottom(Component component, List<Component> verticalComponents) {
+		for (Component candidate : verticalComponents)
+			if (component.verticalExtension(candidate) && candidate.getFromY() > component.getFromY())
+				return linearBottom(candidate, verticalComponents);
+		return component.getToY();
+	}
+}
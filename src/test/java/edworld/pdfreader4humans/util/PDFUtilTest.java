@@ -0,0 +1,63 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.nio.channels.FileChannel;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.junit.Test;
+
+public class PDFUtilTest {
+	private static final URL INPUT = PDFUtilTest.class.getResource("/testcase3/input.pdf");
+
+	@Test
+	public void loadFromFilePathAndChannel() throws IOException {
+		String expected = text(PDFUtil.load(INPUT));
+		File file = FileUtils.toFile(INPUT);
+		assertEquals(expected, text(PDFUtil.load(file)));
+		assertEquals(expected, text(PDFUtil.load(file.toPath())));
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		PDDocument doc;
+		try {
+			FileChannel channel = randomAccessFile.getChannel();
+			doc = PDFUtil.load(channel);
+		} finally {
+			randomAccessFile.close();
+		}
+		assertEquals(expected, text(doc));
+	}
+
+	@Test
+	public void loadRemoteURLWithLimitedMemory() throws IOException {
+		String expected = text(PDFUtil.load(INPUT));
+		URL remote = new URL(null, "remote:input.pdf", new URLStreamHandler() {
+			@Override
+			protected URLConnection openConnection(URL url) throws IOException {
+				return INPUT.openConnection();
+			}
+		});
+		PDFUtil.setMaxMainMemoryBytes(4096);
+		try {
+			assertEquals(expected, text(PDFUtil.load(remote)));
+		} finally {
+			PDFUtil.setMaxMainMemoryBytes(-1);
+		}
+	}
+
+	private String text(PDDocument doc) throws IOException {
+		try {
+			return doc.getNumberOfPages() + ":" + new PDFTextStripper().getText(doc);
+		} finally {
+			doc.close();
+		}
+	}
+}
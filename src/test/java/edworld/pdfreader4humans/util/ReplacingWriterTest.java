@@ -0,0 +1,38 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+public class ReplacingWriterTest {
+	@Test
+	public void replaceLikeString() throws IOException {
+		assertReplacedLikeString("a\n\n\nb\n\n\n\nc\n", "\n\n", "\n");
+		assertReplacedLikeString("a\r\n\r\r\n\r\n\r\nb\r\n\r\n\r", "\r\n\r\n", "\r\n");
+		assertReplacedLikeString("aabaabaaab", "aab", "-");
+		assertReplacedLikeString("no match", "xyz", "-");
+	}
+
+	@Test
+	public void holdPossibleMatchUntilFinished() throws IOException {
+		StringWriter output = new StringWriter();
+		ReplacingWriter writer = new ReplacingWriter(output, "\n\n", "\n");
+		writer.write("text\n");
+		assertEquals("text", output.toString());
+		writer.finish();
+		assertEquals("text\n", output.toString());
+	}
+
+	private void assertReplacedLikeString(String text, String target, String replacement) throws IOException {
+		StringWriter output = new StringWriter();
+		ReplacingWriter writer = new ReplacingWriter(output, target, replacement);
+		for (int i = 0; i < text.length(); i += 3)
+			writer.write(text, i, Math.min(3, text.length() - i));
+		writer.close();
+		assertEquals(text.replace(target, replacement), output.toString());
+	}
+}
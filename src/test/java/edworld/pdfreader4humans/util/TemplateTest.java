@@ -0,0 +1,49 @@
+// This open source code is distributed without warranties according to the license published at http://www.apache.org/licenses/LICENSE-2.0
+package edworld.pdfreader4humans.util;
+
+import static java.lang.System.getProperty;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+
+import org.junit.Test;
+
+public class TemplateTest {
+	private static final String LINE_BREAK = getProperty("line.separator");
+
+	@Test
+	public void render() throws IOException {
+		Template template = new Template("<item id=\"${id}\" other=\"${other}\">\n${content}\n</item>\n");
+		StringWriter output = new StringWriter();
+		template.render(2, new TemplateFields() {
+			@Override
+			public boolean writeField(String fieldName, Writer writer) throws IOException {
+				if (fieldName.equals("id"))
+					writer.write("7");
+				else if (fieldName.equals(Template.CONTENT))
+					writer.write("\t\t\t<child />" + LINE_BREAK);
+				else
+					return false;
+				return true;
+			}
+		}, output);
+		assertEquals("\t\t<item id=\"7\" other=\"${other}\">" + LINE_BREAK + "\t\t\t<child />" + LINE_BREAK + "\t\t</item>"
+				+ LINE_BREAK, output.toString());
+	}
+
+	@Test
+	public void fill() {
+		String text = Template.fill("<item id=\"${id}\">\n${content}</item>", new TemplateFields() {
+			@Override
+			public boolean writeField(String fieldName, Writer writer) throws IOException {
+				if (!fieldName.equals("id"))
+					return false;
+				writer.write("7");
+				return true;
+			}
+		});
+		assertEquals("<item id=\"7\">\n${content}</item>", text);
+	}
+}